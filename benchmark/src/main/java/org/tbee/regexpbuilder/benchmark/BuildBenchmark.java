@@ -0,0 +1,60 @@
+package org.tbee.regexpbuilder.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tbee.regexpbuilder.RegExp;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * The cost of building, rendering and compiling a RegExp.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BuildBenchmark {
+
+    @Param({"10", "100"})
+    public int depth;
+
+    private RegExp nested;
+
+    @Setup
+    public void setup() {
+        nested = Expressions.nested(depth);
+    }
+
+    @Benchmark
+    public RegExp buildApacheLog() {
+        return Expressions.apacheLog();
+    }
+
+    /**
+     * Wrapping the nested fragments in a new RegExp forces rendering of the whole tree.
+     */
+    @Benchmark
+    public String toStringNested() {
+        return RegExp.of().group(nested).toString();
+    }
+
+    /**
+     * A new RegExp is build for every invocation, so the pattern is not cached.
+     */
+    @Benchmark
+    public Pattern toPatternApacheLog() {
+        return Expressions.apacheLog().toPattern();
+    }
+}
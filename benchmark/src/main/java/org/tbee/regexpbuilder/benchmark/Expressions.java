@@ -0,0 +1,65 @@
+package org.tbee.regexpbuilder.benchmark;
+
+import org.tbee.regexpbuilder.RegExp;
+
+import static org.tbee.regexpbuilder.RE.*;
+
+/**
+ * The expressions used by the benchmarks.
+ */
+class Expressions {
+
+    static final String LOG_LINE = "127.0.0.1 - - [21/Jul/2014:9:55:27 -0800] \"GET /home.html HTTP/1.1\" 200 2048";
+
+    /**
+     * The log line example from the README
+     */
+    static RegExp apacheLog() {
+        return RegExp.of()
+                .group("ip", oneOrMore(nonWhitespace()))
+                .text(" ")
+                .group("client", oneOrMore(nonWhitespace()))
+                .text(" ")
+                .group("user", oneOrMore(nonWhitespace()))
+                .text(" [")
+                .group("datetime", oneOrMore(oneOf(word().or().text(":/"))))
+                .text(" ")
+                .group("offset", oneOf("+-").followedBy().occurs(4, digit()))
+                .text("] \"")
+                .group("method", oneOrMore(nonWhitespace()))
+                .text(" ")
+                .group("url", oneOrMore(nonWhitespace()))
+                .text(" ")
+                .group("http", oneOrMore(nonWhitespace()))
+                .text("\" ")
+                .group("status", oneOrMore(digit()))
+                .text(" ")
+                .group("size", oneOrMore(digit()));
+    }
+
+    /**
+     * Fragments nested depth levels deep, each level adding a group, a quantifier and some text.
+     */
+    static RegExp nested(int depth) {
+        RegExp regExp = RegExp.of().text("leaf");
+        for (int i = 0; i < depth; i++) {
+            regExp = RegExp.of()
+                    .text("level" + i + ".")
+                    .group(regExp)
+                    .optional(oneOf("+-"))
+                    .oneOrMore(digit());
+        }
+        return regExp;
+    }
+
+    /**
+     * A list of distinct words, like a block list or product codes.
+     */
+    static String[] words(int count) {
+        String[] words = new String[count];
+        for (int i = 0; i < count; i++) {
+            words[i] = "word" + Integer.toString(i * 7919, 36);
+        }
+        return words;
+    }
+}
@@ -0,0 +1,94 @@
+package org.tbee.regexpbuilder.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.tbee.regexpbuilder.CompiledRegExp;
+import org.tbee.regexpbuilder.RegExp;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+
+/**
+ * The throughput of matching with a compiled RegExp.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatchBenchmark {
+
+    /**
+     * The groups of a log line, which do not depend on the number of alternatives.
+     */
+    @State(Scope.Benchmark)
+    public static class ApacheLogState {
+        private RegExp apacheLog;
+        private CompiledRegExp apacheLogCompiled;
+        private int[] apacheLogGroups;
+
+        @Setup
+        public void setup() {
+            apacheLog = Expressions.apacheLog();
+            apacheLogCompiled = apacheLog.compile();
+            apacheLogGroups = new int[apacheLogCompiled.slotCount()];
+            for (int slot = 0; slot < apacheLogGroups.length; slot++) {
+                apacheLogGroups[slot] = apacheLogCompiled.groupIndex(slot);
+            }
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class AnyOfState {
+        @Param({"10", "1000"})
+        public int alternatives;
+
+        private RegExp anyOf;
+        private String anyOfLine;
+
+        @Setup
+        public void setup() {
+            // the alternatives share a prefix and the one that matches is the last one
+            String[] words = Expressions.words(alternatives);
+            anyOf = RegExp.of().anyOf(words);
+            anyOfLine = "a line of text that mentions " + words[words.length - 1] + " near the end";
+        }
+    }
+
+    @Benchmark
+    public void toMatcherWithGroups(ApacheLogState state, Blackhole blackhole) {
+        RegExp apacheLog = state.apacheLog;
+        Matcher matcher = apacheLog.toMatcher(Expressions.LOG_LINE);
+        if (matcher.matches()) {
+            blackhole.consume(matcher.group(apacheLog.indexOf("ip")));
+            blackhole.consume(matcher.group(apacheLog.indexOf("datetime")));
+            blackhole.consume(matcher.group(apacheLog.indexOf("url")));
+            blackhole.consume(matcher.group(apacheLog.indexOf("status")));
+        }
+    }
+
+    @Benchmark
+    public void reusedMatcherWithGroups(ApacheLogState state, Blackhole blackhole) {
+        Matcher matcher = state.apacheLogCompiled.reusedMatcher(Expressions.LOG_LINE);
+        if (matcher.matches()) {
+            for (int groupIndex : state.apacheLogGroups) {
+                blackhole.consume(matcher.group(groupIndex));
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean anyOfFind(AnyOfState state) {
+        return state.anyOf.toReusedMatcher(state.anyOfLine).find();
+    }
+}
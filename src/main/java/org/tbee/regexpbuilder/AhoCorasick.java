@@ -0,0 +1,210 @@
+package org.tbee.regexpbuilder;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Searches for many literal keywords in one pass over the text, in time linear to the length of the text.
+ * The automaton is stored in primitive arrays: the edges of each state are sorted by character,
+ * and the edges of the root state are also available as a direct lookup table for ASCII.
+ */
+final class AhoCorasick {
+
+    private static final int ROOT = 0;
+
+    private final int[] keywordLengths;
+    private final int maxKeywordLength;
+    private final int[] edgeStart; // the edges of state s are at edgeStart[s] until edgeStart[s + 1]
+    private final char[] edgeChar;
+    private final int[] edgeTarget;
+    private final int[] rootAscii;
+    private final int[] fail;
+    private final int[] keyword; // the keyword ending at the state, -1 if none
+    private final int[] outputLink; // the next state on the fail path that has a keyword, -1 if none
+
+    AhoCorasick(String[] keywords) {
+        keywordLengths = new int[keywords.length];
+
+        // build the trie
+        List<Map<Character, Integer>> children = new ArrayList<>();
+        List<Integer> keywordList = new ArrayList<>();
+        children.add(new HashMap<>());
+        keywordList.add(-1);
+        for (int i = 0; i < keywords.length; i++) {
+            String s = keywords[i];
+            if (s.isEmpty()) {
+                throw new IllegalArgumentException("Keywords cannot be empty");
+            }
+            keywordLengths[i] = s.length();
+            int state = ROOT;
+            for (int j = 0; j < s.length(); j++) {
+                Integer next = children.get(state).get(s.charAt(j));
+                if (next == null) {
+                    next = children.size();
+                    children.add(new HashMap<>());
+                    keywordList.add(-1);
+                    children.get(state).put(s.charAt(j), next);
+                }
+                state = next;
+            }
+            if (keywordList.get(state) < 0) {
+                keywordList.set(state, i);
+            }
+        }
+
+        // flatten the edges
+        int stateCount = children.size();
+        edgeStart = new int[stateCount + 1];
+        for (int state = 0; state < stateCount; state++) {
+            edgeStart[state + 1] = edgeStart[state] + children.get(state).size();
+        }
+        edgeChar = new char[edgeStart[stateCount]];
+        edgeTarget = new int[edgeStart[stateCount]];
+        for (int state = 0; state < stateCount; state++) {
+            Character[] chars = children.get(state).keySet().toArray(new Character[0]);
+            Arrays.sort(chars);
+            for (int i = 0; i < chars.length; i++) {
+                edgeChar[edgeStart[state] + i] = chars[i];
+                edgeTarget[edgeStart[state] + i] = children.get(state).get(chars[i]);
+            }
+        }
+        rootAscii = new int[128];
+        for (int c = 0; c < 128; c++) {
+            rootAscii[c] = Math.max(ROOT, edge(ROOT, (char) c));
+        }
+        keyword = keywordList.stream().mapToInt(Integer::intValue).toArray();
+        maxKeywordLength = Arrays.stream(keywordLengths).max().orElse(0);
+
+        // breadth first, so the fail state of a state is known before its children are visited
+        fail = new int[stateCount];
+        outputLink = new int[stateCount];
+        outputLink[ROOT] = -1;
+        Queue<Integer> queue = new ArrayDeque<>();
+        for (int e = edgeStart[ROOT]; e < edgeStart[ROOT + 1]; e++) {
+            fail[edgeTarget[e]] = ROOT;
+            outputLink[edgeTarget[e]] = -1;
+            queue.add(edgeTarget[e]);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.remove();
+            for (int e = edgeStart[state]; e < edgeStart[state + 1]; e++) {
+                int child = edgeTarget[e];
+                int f = next(fail[state], edgeChar[e]);
+                fail[child] = f;
+                outputLink[child] = keyword[f] >= 0 ? f : outputLink[f];
+                queue.add(child);
+            }
+        }
+    }
+
+    int keywordCount() {
+        return keywordLengths.length;
+    }
+
+    /**
+     * Marks the keywords that occur in the text.
+     * @return the number of keywords that were marked
+     */
+    int markPresent(CharSequence text, boolean[] present) {
+        int marked = 0;
+        int state = ROOT;
+        for (int i = 0; i < text.length(); i++) {
+            state = next(state, text.charAt(i));
+            for (int s = keyword[state] >= 0 ? state : outputLink[state]; s >= 0; s = outputLink[s]) {
+                if (!present[keyword[s]]) {
+                    present[keyword[s]] = true;
+                    marked++;
+                    if (marked == keywordLengths.length) {
+                        return marked;
+                    }
+                }
+            }
+        }
+        return marked;
+    }
+
+    /**
+     * Finds the leftmost keyword occurrence at or after from; of the keywords starting there the one with the lowest index.
+     * This is the same match as an alternation of the keywords in java.util.regex.
+     * @param result receives the start, end and index of the keyword
+     * @return true if a keyword was found
+     */
+    boolean find(CharSequence text, int from, int[] result) {
+        int bestStart = -1;
+        int bestKeyword = -1;
+        int state = ROOT;
+        for (int i = from; i < text.length(); i++) {
+            // keywords ending from here on start after the best one
+            if (bestStart >= 0 && i >= bestStart + maxKeywordLength) {
+                break;
+            }
+            state = next(state, text.charAt(i));
+            for (int s = keyword[state] >= 0 ? state : outputLink[state]; s >= 0; s = outputLink[s]) {
+                int k = keyword[s];
+                int start = i + 1 - keywordLengths[k];
+                if (bestStart < 0 || start < bestStart || (start == bestStart && k < bestKeyword)) {
+                    bestStart = start;
+                    bestKeyword = k;
+                }
+            }
+        }
+        if (bestStart < 0) {
+            return false;
+        }
+        result[0] = bestStart;
+        result[1] = bestStart + keywordLengths[bestKeyword];
+        result[2] = bestKeyword;
+        return true;
+    }
+
+    /**
+     * @return the index of the keyword that is equal to the whole text, -1 if none
+     */
+    int exact(CharSequence text) {
+        int state = ROOT;
+        for (int i = 0; i < text.length() && state >= 0; i++) {
+            state = edge(state, text.charAt(i));
+        }
+        return state < 0 ? -1 : keyword[state];
+    }
+
+    // -------------------------
+    // SUPPORT
+
+    private int next(int state, char c) {
+        while (true) {
+            if (state == ROOT) {
+                return c < 128 ? rootAscii[c] : Math.max(ROOT, edge(ROOT, c));
+            }
+            int target = edge(state, c);
+            if (target >= 0) {
+                return target;
+            }
+            state = fail[state];
+        }
+    }
+
+    private int edge(int state, char c) {
+        int low = edgeStart[state];
+        int high = edgeStart[state + 1] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char midChar = edgeChar[mid];
+            if (midChar < c) {
+                low = mid + 1;
+            }
+            else if (midChar > c) {
+                high = mid - 1;
+            }
+            else {
+                return edgeTarget[mid];
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,34 @@
+package org.tbee.regexpbuilder;
+
+import java.util.List;
+
+/**
+ * The result of RegExp.analyze(): the parts of the expression that can make the backtracking engine take excessive time on a non-matching input.
+ *
+ * <pre>{@code
+ * Analysis analysis = RegExp.of().zeroOrMore(group(oneOrMore(word()).optional(whitespace()))).analyze();
+ * analysis.complexity(); // EXPONENTIAL
+ * }</pre>
+ *
+ * @param complexity the estimated worst-case complexity of the expression, in the length of the input
+ * @param findings the risky subexpressions, empty if the complexity is linear
+ */
+public record Analysis(Complexity complexity, List<Finding> findings) {
+
+    public enum Complexity {LINEAR, POLYNOMIAL, EXPONENTIAL}
+
+    /**
+     * @param subexpression the risky part of the regular expression
+     * @param complexity the estimated worst-case complexity it causes
+     * @param description why it is risky
+     */
+    public record Finding(String subexpression, Complexity complexity, String description) {
+        public String toString() {
+            return complexity + " " + subexpression + ": " + description;
+        }
+    }
+
+    public boolean isLinear() {
+        return complexity == Complexity.LINEAR;
+    }
+}
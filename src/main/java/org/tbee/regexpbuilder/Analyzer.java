@@ -0,0 +1,307 @@
+package org.tbee.regexpbuilder;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Finds the structures that make a backtracking engine take polynomial or exponential time:
+ * - a repeated body that can match the same text in more than one way, like "(\w+\s?)*" or "(a|ab)*",
+ * - adjacent quantifiers with a variable count that can match the same characters, like "\d+\d+".
+ * A bounded quantifier like {1,40} is treated as a loop as well, because its iterations can divide the text in as many ways.
+ * The characters that a node can match are those of its CharSet, and a back reference is assumed to match any character, so the analysis may report risks that are not there, but not the other way around.
+ * Possessive quantifiers and atomic groups do not give back what they matched, so they are safe themselves, but their content is still checked.
+ */
+final class Analyzer {
+
+    private final Set<Analysis.Finding> findings = new LinkedHashSet<>();
+
+    private Analyzer() {
+    }
+
+    static Analysis analyze(List<Node> nodes) {
+        Analyzer analyzer = new Analyzer();
+        analyzer.walk(Node.of(nodes));
+        Analysis.Complexity complexity = analyzer.findings.stream()
+                .map(Analysis.Finding::complexity)
+                .max(Comparator.naturalOrder())
+                .orElse(Analysis.Complexity.LINEAR);
+        return new Analysis(complexity, List.copyOf(analyzer.findings));
+    }
+
+    // -------------------------
+    // WALK
+
+    private void walk(Node node) {
+        List<Node> elements = flatten(node);
+        checkAdjacent(elements);
+        for (Node element : elements) {
+            if (element instanceof Node.Quantifier quantifier) {
+                if (quantifier.mode() != Node.Quantifier.Mode.POSSESSIVE && (quantifier.max() < 0 || quantifier.max() > 1) && !Node.isEmpty(quantifier.atom())) {
+                    checkBody(quantifier.atom(), first(quantifier.atom()), quantifier);
+                }
+                walk(quantifier.atom());
+            }
+            else if (element instanceof Node.Alternation alternation) {
+                for (Node alternative : alternation.alternatives()) {
+                    walk(alternative);
+                }
+            }
+            else if (element instanceof Node.NonCapturingGroup group) {
+                walk(group.content()); // atomic, the engine still backtracks inside it while matching it
+            }
+        }
+    }
+
+    /**
+     * Unbounded quantifiers separated only by what may match nothing, like "\d+\s*\d+", can split the same text in many ways.
+     */
+    private void checkAdjacent(List<Node> elements) {
+        for (int i = 0; i < elements.size(); i++) {
+            if (!isBacktrackingLoop(elements.get(i))) {
+                continue;
+            }
+            Node.Quantifier quantifier = (Node.Quantifier) elements.get(i);
+            for (int j = i + 1; j < elements.size(); j++) {
+                Node next = elements.get(j);
+                if (isBacktrackingLoop(next) && chars(quantifier.atom()).intersects(chars(((Node.Quantifier) next).atom()))) {
+                    findings.add(new Analysis.Finding(render(quantifier) + "..." + render(next), Analysis.Complexity.POLYNOMIAL,
+                            "'" + render(quantifier) + "' and '" + render(next) + "' can match the same characters, so a failing match tries every way to divide them"));
+                    break;
+                }
+                if (!nullable(next)) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Check the body of a loop for a part that can match the same text in more than one way; each iteration multiplies the number of ways.
+     * @param follow the characters that can follow the node inside the loop, including the start of the next iteration
+     */
+    private void checkBody(Node node, CharSet follow, Node.Quantifier loop) {
+        List<Node> elements = flatten(node);
+        CharSet after = follow;
+        for (int i = elements.size() - 1; i >= 0; i--) {
+            checkElement(elements.get(i), after, loop);
+            after = nullable(elements.get(i)) ? first(elements.get(i)).union(after) : first(elements.get(i));
+        }
+    }
+
+    private void checkElement(Node element, CharSet follow, Node.Quantifier loop) {
+        if (element instanceof Node.Quantifier quantifier) {
+            if (quantifier.mode() == Node.Quantifier.Mode.POSSESSIVE || Node.isEmpty(quantifier.atom())) {
+                return;
+            }
+            if (isVariable(quantifier) && chars(quantifier.atom()).intersects(follow)) {
+                findings.add(new Analysis.Finding(render(loop), complexity(loop),
+                        "'" + render(quantifier) + "' is repeated and can match the characters that follow it, so the text can be divided over the iterations in " + ways(loop) + " ways"));
+            }
+            checkBody(quantifier.atom(), first(quantifier.atom()).union(follow), loop);
+        }
+        else if (element instanceof Node.Alternation alternation) {
+            List<Node> alternatives = alternation.alternatives();
+            for (int i = 0; i < alternatives.size(); i++) {
+                for (int j = i + 1; j < alternatives.size(); j++) {
+                    if (first(alternatives.get(i)).intersects(first(alternatives.get(j)))) {
+                        findings.add(new Analysis.Finding(render(loop), complexity(loop),
+                                "'" + render(alternatives.get(i)) + "' and '" + render(alternatives.get(j)) + "' can start with the same character and are repeated, so every iteration may try both"));
+                    }
+                }
+            }
+            for (Node alternative : alternatives) {
+                checkBody(alternative, follow, loop);
+            }
+        }
+    }
+
+    // -------------------------
+    // SUPPORT
+
+    private static boolean isBacktrackingLoop(Node node) {
+        return node instanceof Node.Quantifier quantifier
+                && isVariable(quantifier)
+                && quantifier.mode() != Node.Quantifier.Mode.POSSESSIVE
+                && !Node.isEmpty(quantifier.atom());
+    }
+
+    /**
+     * @return true if the quantifier can match a varying number of times, more than once, like * or {1,40}, but not ? or {3}
+     */
+    private static boolean isVariable(Node.Quantifier quantifier) {
+        return quantifier.max() < 0 || quantifier.max() > Math.max(quantifier.min(), 1);
+    }
+
+    /**
+     * Each iteration multiplies the number of ways, so a bounded loop is polynomial in the length of the text, to the power of its maximum.
+     */
+    private static Analysis.Complexity complexity(Node.Quantifier loop) {
+        return loop.max() < 0 ? Analysis.Complexity.EXPONENTIAL : Analysis.Complexity.POLYNOMIAL;
+    }
+
+    private static String ways(Node.Quantifier loop) {
+        return loop.max() < 0 ? "exponentially many" : "up to n^" + loop.max();
+    }
+
+    /**
+     * The nodes that are matched one after the other, looking through sequences and groups.
+     * An atomic group is not entered, because what follows cannot make it match differently; it is an element of its own.
+     */
+    private static List<Node> flatten(Node node) {
+        List<Node> elements = new ArrayList<>();
+        flatten(node, elements);
+        return elements;
+    }
+
+    private static void flatten(Node node, List<Node> elements) {
+        if (node instanceof Node.Sequence sequence) {
+            for (Node child : attachDangling(sequence.nodes())) {
+                flatten(child, elements);
+            }
+        }
+        else if (node instanceof Node.Group group) {
+            flatten(group.content(), elements);
+        }
+        else if (node instanceof Node.NonCapturingGroup group && !group.atomic()) {
+            flatten(group.content(), elements);
+        }
+        else {
+            elements.add(node);
+        }
+    }
+
+    /**
+     * A quantifier on nothing is rendered behind the preceding atom, so make it quantify that atom, like Node.quantify would have.
+     */
+    private static List<Node> attachDangling(List<Node> nodes) {
+        List<Node> result = new ArrayList<>();
+        for (Node node : nodes) {
+            if (node instanceof Node.Sequence sequence) {
+                result.addAll(attachDangling(sequence.nodes()));
+            }
+            else if (node instanceof Node.Quantifier quantifier && Node.isEmpty(quantifier.atom()) && !result.isEmpty()) {
+                List<Node> quantified = Node.quantify(List.of(result.remove(result.size() - 1)), quantifier.kind(), quantifier.min(), quantifier.max());
+                Node last = quantified.get(quantified.size() - 1);
+                if (quantifier.mode() != Node.Quantifier.Mode.GREEDY && last instanceof Node.Quantifier quantifiedLast && quantifiedLast.mode() == Node.Quantifier.Mode.GREEDY) {
+                    quantified.set(quantified.size() - 1, quantifiedLast.withMode(quantifier.mode()));
+                }
+                result.addAll(quantified);
+            }
+            else {
+                result.add(node);
+            }
+        }
+        return result;
+    }
+
+    private static String render(Node node) {
+        return Node.render(List.of(node));
+    }
+
+    /**
+     * @return true if the node can match the empty text
+     */
+    static boolean nullable(Node node) {
+        if (node instanceof Node.Literal literal) {
+            return literal.text().isEmpty();
+        }
+        if (node instanceof Node.Sequence sequence) {
+            return sequence.nodes().stream().allMatch(Analyzer::nullable);
+        }
+        if (node instanceof Node.Group group) {
+            return nullable(group.content());
+        }
+        if (node instanceof Node.NonCapturingGroup group) {
+            return nullable(group.content());
+        }
+        if (node instanceof Node.Quantifier quantifier) {
+            return quantifier.min() == 0 || nullable(quantifier.atom());
+        }
+        if (node instanceof Node.Alternation alternation) {
+            return alternation.alternatives().stream().anyMatch(Analyzer::nullable);
+        }
+        return node instanceof Node.Anchor || node instanceof Node.BackReference;
+    }
+
+    /**
+     * @return the characters that a match of the node can start with
+     */
+    static CharSet first(Node node) {
+        if (node instanceof Node.Literal literal) {
+            return literal.text().isEmpty() ? CharSet.empty() : CharSet.of(literal.text().codePointAt(0));
+        }
+        if (node instanceof Node.Sequence sequence) {
+            CharSet chars = CharSet.empty();
+            for (Node child : sequence.nodes()) {
+                chars = chars.union(first(child));
+                if (!nullable(child)) {
+                    break;
+                }
+            }
+            return chars;
+        }
+        if (node instanceof Node.Group group) {
+            return first(group.content());
+        }
+        if (node instanceof Node.NonCapturingGroup group) {
+            return first(group.content());
+        }
+        if (node instanceof Node.Quantifier quantifier) {
+            return first(quantifier.atom());
+        }
+        if (node instanceof Node.Alternation alternation) {
+            CharSet chars = CharSet.empty();
+            for (Node alternative : alternation.alternatives()) {
+                chars = chars.union(first(alternative));
+            }
+            return chars;
+        }
+        return chars(node);
+    }
+
+    /**
+     * @return all characters that a match of the node can contain
+     */
+    static CharSet chars(Node node) {
+        if (node instanceof Node.Literal literal) {
+            return CharSet.of(literal.text());
+        }
+        if (node instanceof Node.Shorthand shorthand) {
+            CharSet set = CharSet.of(shorthand);
+            return set == null ? CharSet.all() : set;
+        }
+        if (node instanceof Node.Anchor) {
+            return CharSet.empty();
+        }
+        if (node instanceof Node.CharClass charClass) {
+            return charClass.set();
+        }
+        if (node instanceof Node.Sequence sequence) {
+            CharSet chars = CharSet.empty();
+            for (Node child : sequence.nodes()) {
+                chars = chars.union(chars(child));
+            }
+            return chars;
+        }
+        if (node instanceof Node.Group group) {
+            return chars(group.content());
+        }
+        if (node instanceof Node.NonCapturingGroup group) {
+            return chars(group.content());
+        }
+        if (node instanceof Node.Quantifier quantifier) {
+            return chars(quantifier.atom());
+        }
+        if (node instanceof Node.Alternation alternation) {
+            CharSet chars = CharSet.empty();
+            for (Node alternative : alternation.alternatives()) {
+                chars = chars.union(chars(alternative));
+            }
+            return chars;
+        }
+        return CharSet.all(); // a back reference can match anything
+    }
+}
@@ -0,0 +1,24 @@
+package org.tbee.regexpbuilder;
+
+/**
+ * The engine that does the matching for find(), match() and matches().
+ * The Pattern and Matcher returned by toPattern() and toMatcher() are always java.util.regex.
+ */
+public enum Backend {
+
+    /**
+     * Literal-only expressions use the Aho-Corasick engine, expressions that analyze() reports as risky use the DFA, and all others java.util.regex.
+     */
+    AUTO,
+
+    /**
+     * Always use java.util.regex.
+     */
+    JDK,
+
+    /**
+     * Use the DFA, which matches in time linear to the length of the text.
+     * Expressions that the DFA cannot handle, like those with back references, fall back to java.util.regex.
+     */
+    DFA
+}
@@ -0,0 +1,100 @@
+package org.tbee.regexpbuilder;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * A view of the bytes in a ByteBuffer as chars, without decoding or copying them, so an index in the view is a byte offset.
+ * ASCII bytes are their own char, all other bytes (which in UTF-8 are part of a multi-byte character) are the replacement character U+FFFD.
+ * This only gives the same matches as the decoded text for expressions that never match a non-ASCII character, see isAsciiOnly.
+ */
+final class ByteCharSequence implements CharSequence {
+
+    private static final char NON_ASCII = '\uFFFD';
+
+    private final ByteBuffer buffer;
+    private final int offset; // absolute index in the buffer
+    private final int length;
+
+    /**
+     * A view of the bytes between the buffer's position and limit; the position and limit are not changed.
+     */
+    ByteCharSequence(ByteBuffer buffer) {
+        this(buffer, buffer.position(), buffer.remaining());
+    }
+
+    private ByteCharSequence(ByteBuffer buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        byte b = buffer.get(offset + index);
+        return b >= 0 ? (char) b : NON_ASCII;
+    }
+
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length);
+        }
+        return new ByteCharSequence(buffer, offset + start, end - start);
+    }
+
+    public String toString() {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = charAt(i);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * @return true if the nodes can only match ASCII characters and do not look at the characters around them,
+     * so they can be matched on the bytes of ASCII or UTF-8 text
+     */
+    static boolean isAsciiOnly(List<Node> nodes) {
+        return nodes.stream().allMatch(ByteCharSequence::isAsciiOnly);
+    }
+
+    private static boolean isAsciiOnly(Node node) {
+        if (node instanceof Node.Literal literal) {
+            return literal.text().chars().allMatch(c -> c < 128);
+        }
+        if (node instanceof Node.Shorthand shorthand) {
+            CharSet set = CharSet.of(shorthand);
+            return set != null && set.isAsciiOnly();
+        }
+        if (node instanceof Node.CharClass charClass) {
+            return charClass.set().isAsciiOnly();
+        }
+        if (node instanceof Node.Group group) {
+            return isAsciiOnly(group.content());
+        }
+        if (node instanceof Node.NonCapturingGroup group) {
+            return isAsciiOnly(group.content());
+        }
+        if (node instanceof Node.Sequence sequence) {
+            return sequence.nodes().stream().allMatch(ByteCharSequence::isAsciiOnly);
+        }
+        if (node instanceof Node.Alternation alternation) {
+            return alternation.alternatives().stream().allMatch(ByteCharSequence::isAsciiOnly);
+        }
+        if (node instanceof Node.Quantifier quantifier) {
+            return isAsciiOnly(quantifier.atom());
+        }
+        if (node instanceof Node.Anchor anchor) {
+            // \b and \B test if the neighbouring characters are letters or digits, and $ also matches before \u0085, \u2028 and \u2029,
+            // so they look at non-ASCII characters
+            return anchor.regExp().equals("^");
+        }
+        return node instanceof Node.BackReference;
+    }
+}
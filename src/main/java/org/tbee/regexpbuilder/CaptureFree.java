@@ -0,0 +1,81 @@
+package org.tbee.regexpbuilder;
+
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Rewrites a tree so it does not capture, for when only the outcome or the extent of a match is needed:
+ * every group and alternation becomes non-capturing, except the groups that a back reference refers to.
+ * Those remain, and the back references are renumbered to their new index.
+ */
+final class CaptureFree {
+
+    private final List<Integer> referenced; // the original indexes of the groups that remain, in ascending order
+    private int groupIdx = 0; // the original index of the last group that was visited, in the order they are rendered
+
+    private CaptureFree(List<Integer> referenced) {
+        this.referenced = referenced;
+    }
+
+    static List<Node> of(List<Node> nodes) {
+        TreeSet<Integer> referenced = new TreeSet<>();
+        nodes.forEach(node -> collectReferences(node, referenced));
+        CaptureFree captureFree = new CaptureFree(List.copyOf(referenced));
+        return nodes.stream().map(captureFree::rewrite).toList();
+    }
+
+    private Node rewrite(Node node) {
+        if (node instanceof Node.Group group) {
+            boolean keep = referenced.contains(++groupIdx);
+            Node content = rewrite(group.content());
+            if (keep) {
+                return new Node.Group(group.name(), content);
+            }
+            // an alternation directly in a non-capturing group would no longer capture
+            return new Node.NonCapturingGroup(false, content instanceof Node.Alternation ? new Node.Sequence(List.of(content)) : content);
+        }
+        if (node instanceof Node.Alternation alternation) {
+            boolean keep = referenced.contains(++groupIdx);
+            Node.Alternation rewritten = new Node.Alternation(alternation.alternatives().stream().map(this::rewrite).toList());
+            return keep ? rewritten : new Node.NonCapturingGroup(false, rewritten);
+        }
+        if (node instanceof Node.NonCapturingGroup group) {
+            // an alternation directly in the group does not capture
+            Node content = group.content() instanceof Node.Alternation alternation
+                    ? new Node.Alternation(alternation.alternatives().stream().map(this::rewrite).toList())
+                    : rewrite(group.content());
+            return new Node.NonCapturingGroup(group.atomic(), content);
+        }
+        if (node instanceof Node.Quantifier quantifier) {
+            return new Node.Quantifier(rewrite(quantifier.atom()), quantifier.kind(), quantifier.min(), quantifier.max(), quantifier.mode());
+        }
+        if (node instanceof Node.Sequence sequence) {
+            return new Node.Sequence(sequence.nodes().stream().map(this::rewrite).toList());
+        }
+        if (node instanceof Node.BackReference backReference) {
+            return new Node.BackReference(referenced.indexOf(backReference.groupIdx()) + 1);
+        }
+        return node;
+    }
+
+    private static void collectReferences(Node node, TreeSet<Integer> referenced) {
+        if (node instanceof Node.BackReference backReference) {
+            referenced.add(backReference.groupIdx());
+        }
+        else if (node instanceof Node.Group group) {
+            collectReferences(group.content(), referenced);
+        }
+        else if (node instanceof Node.NonCapturingGroup group) {
+            collectReferences(group.content(), referenced);
+        }
+        else if (node instanceof Node.Quantifier quantifier) {
+            collectReferences(quantifier.atom(), referenced);
+        }
+        else if (node instanceof Node.Alternation alternation) {
+            alternation.alternatives().forEach(alternative -> collectReferences(alternative, referenced));
+        }
+        else if (node instanceof Node.Sequence sequence) {
+            sequence.nodes().forEach(child -> collectReferences(child, referenced));
+        }
+    }
+}
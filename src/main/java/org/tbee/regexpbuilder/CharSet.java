@@ -0,0 +1,411 @@
+package org.tbee.regexpbuilder;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An immutable set of code points, held as sorted, non-overlapping and non-adjacent ranges.
+ * Sets can be combined with union, intersect, subtract and negate, so a character class can be composed before it is used:
+ * <pre>
+ * CharSet hex = CharSet.range('0', '9').union(CharSet.range('a', 'f'));
+ * RegExp.of().oneOrMore(hex.subtract(CharSet.of("0")));
+ * </pre>
+ * Membership of ASCII characters is a bit test, other code points are looked up in the ranges.
+ */
+public final class CharSet {
+
+    static final int MAX = Character.MAX_CODE_POINT;
+
+    private static final CharSet EMPTY = new CharSet(new int[0]);
+    private static final CharSet ALL = new CharSet(new int[]{0, MAX});
+    private static final CharSet DIGIT = new CharSet(new int[]{'0', '9'});
+    private static final CharSet WHITESPACE = new CharSet(new int[]{'\t', '\r', ' ', ' '});
+    private static final CharSet WORD = new CharSet(new int[]{'0', '9', 'A', 'Z', '_', '_', 'a', 'z'});
+    private static final CharSet DOT = new CharSet(new int[]{'\n', '\n', '\r', '\r', 0x85, 0x85, 0x2028, 0x2029}).negate(); // all but the line terminators
+
+    private final int[] ranges; // pairs of inclusive from and to code points
+    private final long low; // characters 0-63
+    private final long high; // characters 64-127
+
+    private CharSet(int[] ranges) {
+        this.ranges = ranges;
+        long low = 0;
+        long high = 0;
+        for (int i = 0; i < ranges.length && ranges[i] < 128; i += 2) {
+            for (int c = ranges[i]; c <= Math.min(ranges[i + 1], 127); c++) {
+                if (c < 64) {
+                    low |= 1L << c;
+                }
+                else {
+                    high |= 1L << (c - 64);
+                }
+            }
+        }
+        this.low = low;
+        this.high = high;
+    }
+
+    // -------------------------
+    // FACTORY
+
+    static public CharSet empty() {
+        return EMPTY;
+    }
+
+    static public CharSet all() {
+        return ALL;
+    }
+
+    /**
+     * @return the set of the characters in the text
+     */
+    static public CharSet of(CharSequence chars) {
+        return of(chars.codePoints().toArray());
+    }
+
+    static public CharSet of(char... chars) {
+        int[] codePoints = new int[chars.length];
+        for (int i = 0; i < chars.length; i++) {
+            codePoints[i] = chars[i];
+        }
+        return of(codePoints);
+    }
+
+    static public CharSet of(int... codePoints) {
+        int[] ranges = new int[codePoints.length * 2];
+        for (int i = 0; i < codePoints.length; i++) {
+            ranges[2 * i] = checkCodePoint(codePoints[i]);
+            ranges[2 * i + 1] = codePoints[i];
+        }
+        return normalize(ranges);
+    }
+
+    /**
+     * @return the set of the characters from and including fromChar up to and including toChar
+     */
+    static public CharSet range(int fromCodePoint, int toCodePoint) {
+        checkCodePoint(fromCodePoint);
+        checkCodePoint(toCodePoint);
+        if (fromCodePoint > toCodePoint) {
+            throw new IllegalArgumentException("The range " + describe(fromCodePoint) + "-" + describe(toCodePoint) + " is out of order");
+        }
+        return new CharSet(new int[]{fromCodePoint, toCodePoint});
+    }
+
+    /** the characters matched by \d */
+    static public CharSet digit() {
+        return DIGIT;
+    }
+
+    /** the characters matched by \s */
+    static public CharSet whitespace() {
+        return WHITESPACE;
+    }
+
+    /** the characters matched by \w */
+    static public CharSet word() {
+        return WORD;
+    }
+
+    /**
+     * The characters that the nodes of a character class stand for.
+     * Inside a class the special meaning of most characters is lost, so "." is just the dot.
+     */
+    static CharSet of(List<Node> nodes) {
+        CharSet set = EMPTY;
+        for (Node node : nodes) {
+            set = set.union(of(node));
+        }
+        return set;
+    }
+
+    private static CharSet of(Node node) {
+        if (node instanceof Node.Literal literal) {
+            return of(literal.text());
+        }
+        if (node instanceof Node.CharClass charClass) {
+            return charClass.set();
+        }
+        if (node instanceof Node.Sequence sequence) {
+            return of(sequence.nodes());
+        }
+        if (node instanceof Node.Shorthand shorthand) {
+            CharSet set = shorthand.regExp().equals(".") ? of('.') : of(shorthand);
+            if (set == null) {
+                throw new IllegalArgumentException("'" + shorthand.regExp() + "' cannot be used in a character class");
+            }
+            return set;
+        }
+        throw new IllegalArgumentException("'" + Node.render(List.of(node)) + "' cannot be used in a character class, only characters can");
+    }
+
+    /**
+     * The characters that a shorthand matches outside a character class, where "." matches all characters but the line terminators.
+     * @return null if the shorthand does not stand for a set of characters
+     */
+    static CharSet of(Node.Shorthand shorthand) {
+        return switch (shorthand.regExp()) {
+            case "." -> DOT;
+            case "\\t" -> of('\t');
+            case "\\r" -> of('\r');
+            case "\\n" -> of('\n');
+            case "\\d" -> DIGIT;
+            case "\\D" -> DIGIT.negate();
+            case "\\s" -> WHITESPACE;
+            case "\\S" -> WHITESPACE.negate();
+            case "\\w" -> WORD;
+            case "\\W" -> WORD.negate();
+            default -> null;
+        };
+    }
+
+    // -------------------------
+    // ALGEBRA
+
+    public CharSet union(CharSet other) {
+        int[] ranges = Arrays.copyOf(this.ranges, this.ranges.length + other.ranges.length);
+        System.arraycopy(other.ranges, 0, ranges, this.ranges.length, other.ranges.length);
+        return normalize(ranges);
+    }
+
+    public CharSet intersect(CharSet other) {
+        int[] result = new int[ranges.length + other.ranges.length];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < ranges.length && j < other.ranges.length) {
+            int from = Math.max(ranges[i], other.ranges[j]);
+            int to = Math.min(ranges[i + 1], other.ranges[j + 1]);
+            if (from <= to) {
+                result[size++] = from;
+                result[size++] = to;
+            }
+            if (ranges[i + 1] < other.ranges[j + 1]) {
+                i += 2;
+            }
+            else {
+                j += 2;
+            }
+        }
+        return new CharSet(Arrays.copyOf(result, size));
+    }
+
+    public CharSet subtract(CharSet other) {
+        return intersect(other.negate());
+    }
+
+    /**
+     * @return all code points that are not in this set
+     */
+    public CharSet negate() {
+        int[] result = new int[ranges.length + 2];
+        int size = 0;
+        int next = 0; // the first code point that is not covered yet
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (ranges[i] > next) {
+                result[size++] = next;
+                result[size++] = ranges[i] - 1;
+            }
+            next = ranges[i + 1] + 1;
+        }
+        if (next <= MAX) {
+            result[size++] = next;
+            result[size++] = MAX;
+        }
+        return new CharSet(Arrays.copyOf(result, size));
+    }
+
+    // -------------------------
+    // QUERY
+
+    public boolean contains(int codePoint) {
+        if (codePoint < 64) {
+            return codePoint >= 0 && (low & (1L << codePoint)) != 0;
+        }
+        if (codePoint < 128) {
+            return (high & (1L << (codePoint - 64))) != 0;
+        }
+        int idx = Arrays.binarySearch(ranges, codePoint);
+        // an even index is the start of a range, an odd one the end, and an odd insertion point lies inside a range
+        return idx >= 0 || (-idx - 1) % 2 == 1;
+    }
+
+    public boolean containsAll(CharSet other) {
+        return other.subtract(this).isEmpty();
+    }
+
+    /**
+     * @return true if the sets have at least one character in common
+     */
+    public boolean intersects(CharSet other) {
+        int i = 0;
+        int j = 0;
+        while (i < ranges.length && j < other.ranges.length) {
+            if (Math.max(ranges[i], other.ranges[j]) <= Math.min(ranges[i + 1], other.ranges[j + 1])) {
+                return true;
+            }
+            if (ranges[i + 1] < other.ranges[j + 1]) {
+                i += 2;
+            }
+            else {
+                j += 2;
+            }
+        }
+        return false;
+    }
+
+    public boolean isEmpty() {
+        return ranges.length == 0;
+    }
+
+    /**
+     * @return true if all characters in the set are ASCII
+     */
+    public boolean isAsciiOnly() {
+        return ranges.length == 0 || ranges[ranges.length - 1] < 128;
+    }
+
+    /**
+     * @return the inclusive from and to code points of the ranges, in ascending order
+     */
+    int[] ranges() {
+        return ranges.clone();
+    }
+
+    // -------------------------
+    // RENDER
+
+    /**
+     * Render the set as the shortest character class of the ones considered:
+     * a range is listed character by character if that is not longer, \w and \s are used when all their characters are in the set,
+     * and the class is negated when that is shorter.
+     */
+    void appendTo(StringBuilder sb) {
+        if (ranges.length == 0) {
+            sb.append("[^\\x{0}-\\x{10FFFF}]");
+            return;
+        }
+        String positive = body(this);
+        String negative = body(negate());
+        if (!negative.isEmpty() && negative.length() < positive.length()) {
+            sb.append("[^").append(negative).append(']');
+        }
+        else {
+            sb.append('[').append(positive).append(']');
+        }
+    }
+
+    /**
+     * @return true if the set is rendered as a negated class
+     */
+    boolean rendersNegated() {
+        return ranges.length > 0 && !negate().isEmpty() && body(negate()).length() < body(this).length();
+    }
+
+    private static String body(CharSet set) {
+        StringBuilder sb = new StringBuilder();
+        if (set.containsAll(WORD)) {
+            sb.append("\\w");
+            set = set.subtract(WORD);
+        }
+        if (set.containsAll(WHITESPACE)) {
+            sb.append("\\s");
+            set = set.subtract(WHITESPACE);
+        }
+        int[] ranges = set.ranges;
+        for (int i = 0; i < ranges.length; i += 2) {
+            int from = ranges[i];
+            int to = ranges[i + 1];
+            StringBuilder range = new StringBuilder();
+            appendChar(from, range);
+            range.append('-');
+            appendChar(to, range);
+            StringBuilder list = new StringBuilder();
+            for (int c = from; c <= to && list.length() <= range.length(); c++) {
+                appendChar(c, list);
+            }
+            sb.append(list.length() <= range.length() ? list : range);
+        }
+        return sb.toString();
+    }
+
+    private static void appendChar(int codePoint, StringBuilder sb) {
+        if (isPrintable(codePoint)) {
+            Node.escape(Character.toString(codePoint), sb, true);
+        }
+        else {
+            sb.append("\\x{").append(Integer.toHexString(codePoint).toUpperCase()).append('}');
+        }
+    }
+
+    private static boolean isPrintable(int codePoint) {
+        if (codePoint == ' ') {
+            return true;
+        }
+        return switch (Character.getType(codePoint)) {
+            case Character.CONTROL, Character.FORMAT, Character.SURROGATE, Character.PRIVATE_USE, Character.UNASSIGNED,
+                 Character.SPACE_SEPARATOR, Character.LINE_SEPARATOR, Character.PARAGRAPH_SEPARATOR -> false;
+            default -> true;
+        };
+    }
+
+    // -------------------------
+    // SUPPORT
+
+    /**
+     * Sort and merge ranges that overlap or are adjacent.
+     */
+    private static CharSet normalize(int[] ranges) {
+        int pairs = ranges.length / 2;
+        long[] sorted = new long[pairs]; // from in the high bits, to in the low bits, so sorting orders on from
+        for (int i = 0; i < pairs; i++) {
+            sorted[i] = ((long) ranges[2 * i] << 32) | ranges[2 * i + 1];
+        }
+        Arrays.sort(sorted);
+        int[] result = new int[ranges.length];
+        int size = 0;
+        for (long pair : sorted) {
+            int from = (int) (pair >>> 32);
+            int to = (int) pair;
+            if (size > 0 && from <= result[size - 1] + 1) {
+                result[size - 1] = Math.max(result[size - 1], to);
+            }
+            else {
+                result[size++] = from;
+                result[size++] = to;
+            }
+        }
+        return new CharSet(Arrays.copyOf(result, size));
+    }
+
+    private static int checkCodePoint(int codePoint) {
+        if (!Character.isValidCodePoint(codePoint)) {
+            throw new IllegalArgumentException(codePoint + " is not a code point");
+        }
+        return codePoint;
+    }
+
+    private static String describe(int codePoint) {
+        return "'" + Character.toString(codePoint) + "'";
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof CharSet other && Arrays.equals(ranges, other.ranges);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(ranges);
+    }
+
+    /**
+     * @return the set as a character class, like [a-z_]
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        appendTo(sb);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,456 @@
+package org.tbee.regexpbuilder;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Predicate;
+import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The immutable result of RegExp.compile(), which can be shared between threads.
+ * Named groups are numbered by slot, in the order they were added to the RegExp.
+ * Resolve the slot of a group name once, and then use the slot for the actual lookups:
+ *
+ * <pre>{@code
+ * CompiledRegExp compiled = regExp.compile();
+ * int ipSlot = compiled.slotOf("ip");
+ * ...
+ * Matcher matcher = compiled.reusedMatcher(line);
+ * if (matcher.matches()) {
+ *     String ip = compiled.group(matcher, ipSlot);
+ * }
+ * }</pre>
+ */
+public final class CompiledRegExp {
+
+    private final String regExpString;
+    private final Pattern pattern;
+    private final String[] groupNames;
+    private final int[] groupIndexes;
+    private final Map<String, Integer> groupNameToSlot;
+    private final Prefilter prefilter;
+    private final Backend backend;
+    private final JdkEngine jdkEngine;
+    private final Engine engine; // the engine used for find and matches, may be a faster one than the jdkEngine
+    private final ThreadLocal<Matcher> reusedMatcher = new ThreadLocal<>(); // see reusedMatcher(), separate from the matcher of the jdkEngine
+    private final boolean asciiOnly; // the expression can be matched on the bytes of UTF-8 text, see isAsciiOnly()
+    private final RegExpMetrics metrics; // null if not instrumented
+    private final List<Node> nodes;
+    private volatile CompiledRegExp captureFree = null; // compiled lazily, see captureFree()
+
+    CompiledRegExp(String regExpString, List<Node> nodes, Map<String, Integer> groupNameToIdx, Backend backend, String ruleName) {
+        RegExpMetrics.CompileEvent compileEvent = ruleName == null ? null : new RegExpMetrics.CompileEvent();
+        long compileStart = ruleName == null ? 0 : System.nanoTime();
+        if (compileEvent != null) {
+            compileEvent.begin();
+        }
+        this.regExpString = regExpString;
+        this.nodes = nodes;
+        this.pattern = Pattern.compile(regExpString);
+        this.prefilter = Prefilter.of(nodes);
+        this.backend = backend;
+        this.jdkEngine = new JdkEngine(pattern, prefilter);
+        this.engine = selectEngine(nodes, backend);
+        this.asciiOnly = ByteCharSequence.isAsciiOnly(nodes);
+
+        // slots are in the order of the group indexes
+        groupNames = groupNameToIdx.entrySet().stream()
+                .sorted(Map.Entry.comparingByValue())
+                .map(Map.Entry::getKey)
+                .toArray(String[]::new);
+        groupIndexes = new int[groupNames.length];
+        Map<String, Integer> groupNameToSlot = new HashMap<>();
+        for (int slot = 0; slot < groupNames.length; slot++) {
+            groupIndexes[slot] = groupNameToIdx.get(groupNames[slot]);
+            groupNameToSlot.put(groupNames[slot], slot);
+        }
+        this.groupNameToSlot = Map.copyOf(groupNameToSlot);
+
+        this.metrics = ruleName == null ? null : new RegExpMetrics(ruleName, regExpString);
+        if (metrics != null) {
+            metrics.recordCompile(System.nanoTime() - compileStart);
+            compileEvent.ruleName = ruleName;
+            compileEvent.regExp = regExpString;
+            compileEvent.commit();
+        }
+    }
+
+    // -------------------------
+    // GROUP
+
+    /**
+     * @param name group name
+     * @return the slot of the group, to be used in groupIndex(slot) and group(matcher, slot)
+     */
+    public int slotOf(String name) {
+        Integer slot = groupNameToSlot.get(name);
+        if (slot == null) {
+            throw new IllegalArgumentException("Group '" + name + "' does not exist");
+        }
+        return slot;
+    }
+
+    /**
+     * @param slot as returned by slotOf(name)
+     * @return index of the group in the regular expression
+     */
+    public int groupIndex(int slot) {
+        return groupIndexes[slot];
+    }
+
+    /**
+     * @param name group name
+     * @return index of the group in the regular expression
+     */
+    public int indexOf(String name) {
+        return groupIndexes[slotOf(name)];
+    }
+
+    /**
+     * @return the number of named groups
+     */
+    public int slotCount() {
+        return groupNames.length;
+    }
+
+    public String groupName(int slot) {
+        return groupNames[slot];
+    }
+
+    /**
+     * @param matcher a matcher created by this compiled regexp, after a successful match
+     * @param slot as returned by slotOf(name)
+     * @return the text matched by the group
+     */
+    public String group(Matcher matcher, int slot) {
+        return matcher.group(groupIndexes[slot]);
+    }
+
+    // -------------------------
+    // MATCH
+
+    /**
+     * Find the first match in the text.
+     * Literal texts that every match must contain are searched for first, so input that cannot match is skipped without using the regular expression engine.
+     * Expressions that consist of only literal texts do not use the regular expression engine at all.
+     * Every call allocates an offsets array, an OffsetMatchResult and an Optional;
+     * use test(text) if only the outcome is needed, or a GroupExtractor to read groups without allocating.
+     * @param text the text to search
+     * @return the match, or empty if there is none
+     */
+    public Optional<MatchResult> find(CharSequence text) {
+        int[] offsets = engine.newOffsets();
+        if (!find(text, 0, offsets, FIND)) {
+            return Optional.empty();
+        }
+        return Optional.of(new OffsetMatchResult(text, offsets));
+    }
+
+    /**
+     * Match the whole text.
+     * @param text the text to match
+     * @return the match, or empty if the text does not match
+     */
+    public Optional<MatchResult> match(CharSequence text) {
+        int[] offsets = engine.newOffsets();
+        if (!matches(text, offsets, MATCHES)) {
+            return Optional.empty();
+        }
+        return Optional.of(new OffsetMatchResult(text, offsets));
+    }
+
+    /**
+     * @param text the text to match
+     * @return true if the whole text matches
+     */
+    public boolean matches(CharSequence text) {
+        return matches(text, null, MATCHES);
+    }
+
+    /**
+     * Like Pattern.asPredicate(), this finds a match anywhere in the text.
+     * The match runs on a variant of the expression without capturing groups, see captureFree(), so the engine does not need to track them.
+     * @param text the text to search
+     * @return true if the text contains a match
+     */
+    public boolean test(CharSequence text) {
+        return find(captureFree().engine, text, 0, null, TEST);
+    }
+
+    /**
+     * Count the non-overlapping matches in the text, like repeatedly calling Matcher.find() would, but on the variant without capturing groups.
+     * @param text the text to search
+     * @return the number of matches
+     */
+    public int count(CharSequence text) {
+        Engine engine = captureFree().engine;
+        if (metrics == null) {
+            return count(engine, text);
+        }
+        RegExpMetrics.MatchEvent event = new RegExpMetrics.MatchEvent();
+        event.begin();
+        long start = System.nanoTime();
+        int count = count(engine, text);
+        record(event, start, COUNT, text, count > 0);
+        return count;
+    }
+
+    private static int count(Engine engine, CharSequence text) {
+        int[] offsets = engine.newOffsets();
+        int count = 0;
+        int from = 0;
+        while (from <= text.length() && engine.find(text, from, offsets)) {
+            count++;
+            // after an empty match the search continues one further, otherwise it would find the same match again
+            from = offsets[1] == offsets[0] ? offsets[1] + 1 : offsets[1];
+        }
+        return count;
+    }
+
+    /**
+     * @return test(text) as a predicate, for filtering streams and collections
+     */
+    public Predicate<CharSequence> asPredicate() {
+        return this::test;
+    }
+
+    /**
+     * The same expression with all groups non-capturing, except the ones that back references refer to, which are renumbered.
+     * It is compiled on first use, and then reused; without any capturing groups this is the expression itself.
+     */
+    CompiledRegExp captureFree() {
+        CompiledRegExp captureFree = this.captureFree;
+        if (captureFree == null) {
+            if (engine.groupCount() == 0) {
+                captureFree = this;
+            }
+            else {
+                List<Node> captureFreeNodes = Optimizer.optimize(CaptureFree.of(nodes));
+                captureFree = new CompiledRegExp(Node.render(captureFreeNodes), captureFreeNodes, Map.of(), backend, null);
+            }
+            this.captureFree = captureFree;
+        }
+        return captureFree;
+    }
+
+    // -------------------------
+    // OFFSETS
+
+    /**
+     * @return an array that can hold the offsets of all groups, for find(text, from, offsets) and matches(text, offsets)
+     */
+    public int[] newOffsets() {
+        return engine.newOffsets();
+    }
+
+    /**
+     * Find the first match that starts at or after from, without allocating a result:
+     * the start and end of group i are written to offsets[2*i] and offsets[2*i+1], or -1 if the group did not participate.
+     * @param text the text to search
+     * @param from the offset to start searching at
+     * @param offsets receives the offsets, see newOffsets(); may be null if only the outcome is needed
+     * @return true if a match was found; if not, the contents of offsets are undefined
+     */
+    public boolean find(CharSequence text, int from, int[] offsets) {
+        checkOffsets(offsets);
+        return find(text, from, offsets, FIND);
+    }
+
+    /**
+     * Match the whole text, writing the group offsets like find(text, from, offsets).
+     * @param text the text to match
+     * @param offsets receives the offsets, see newOffsets(); may be null if only the outcome is needed
+     * @return true if the whole text matches
+     */
+    public boolean matches(CharSequence text, int[] offsets) {
+        checkOffsets(offsets);
+        return matches(text, offsets, MATCHES);
+    }
+
+    private void checkOffsets(int[] offsets) {
+        if (offsets != null && offsets.length < 2 * (engine.groupCount() + 1)) {
+            throw new IllegalArgumentException("The offsets array must have a length of at least " + 2 * (engine.groupCount() + 1) + ", use newOffsets()");
+        }
+    }
+
+    /**
+     * @return a new extractor for reading groups without allocating, see GroupExtractor
+     */
+    public GroupExtractor groupExtractor() {
+        return new GroupExtractor(this);
+    }
+
+    // -------------------------
+    // METRICS
+
+    private static final String FIND = "find";
+    private static final String MATCHES = "matches";
+    private static final String TEST = "test";
+    private static final String COUNT = "count";
+
+    /**
+     * @return the metrics, or empty if the RegExp was not instrumented, see RegExp.instrument(ruleName)
+     */
+    public Optional<RegExpMetrics> metrics() {
+        return Optional.ofNullable(metrics);
+    }
+
+    private boolean find(CharSequence text, int from, int[] offsets, String operation) {
+        return find(engine, text, from, offsets, operation);
+    }
+
+    private boolean find(Engine engine, CharSequence text, int from, int[] offsets, String operation) {
+        if (metrics == null) {
+            return engine.find(text, from, offsets);
+        }
+        RegExpMetrics.MatchEvent event = new RegExpMetrics.MatchEvent();
+        event.begin();
+        long start = System.nanoTime();
+        boolean found = engine.find(text, from, offsets);
+        record(event, start, operation, text, found);
+        return found;
+    }
+
+    private boolean matches(CharSequence text, int[] offsets, String operation) {
+        if (metrics == null) {
+            return engine.matches(text, offsets);
+        }
+        RegExpMetrics.MatchEvent event = new RegExpMetrics.MatchEvent();
+        event.begin();
+        long start = System.nanoTime();
+        boolean matched = engine.matches(text, offsets);
+        record(event, start, operation, text, matched);
+        return matched;
+    }
+
+    private void record(RegExpMetrics.MatchEvent event, long start, String operation, CharSequence text, boolean matched) {
+        metrics.recordMatch(System.nanoTime() - start, matched);
+        event.end();
+        if (event.shouldCommit()) {
+            event.ruleName = metrics.ruleName();
+            event.operation = operation;
+            event.textLength = text.length();
+            event.matched = matched;
+            event.commit();
+        }
+    }
+
+    // -------------------------
+    // BYTES
+
+    /**
+     * Find the first match in the bytes between the buffer's position and limit, without decoding them.
+     * The offsets in the result are in bytes, relative to the buffer's position; the buffer's position and limit are not changed.
+     * @param buffer ASCII or UTF-8 encoded text, may be a direct or mapped buffer
+     * @return the match, or empty if there is none
+     * @throws IllegalStateException if the expression can match non-ASCII characters, see isAsciiOnly()
+     */
+    public Optional<MatchResult> find(ByteBuffer buffer) {
+        return find(bytes(buffer));
+    }
+
+    /**
+     * @param buffer ASCII or UTF-8 encoded text, may be a direct or mapped buffer
+     * @return true if all bytes between the buffer's position and limit match
+     * @throws IllegalStateException if the expression can match non-ASCII characters, see isAsciiOnly()
+     */
+    public boolean matches(ByteBuffer buffer) {
+        return matches(bytes(buffer));
+    }
+
+    /**
+     * @param buffer ASCII or UTF-8 encoded text, may be a direct or mapped buffer
+     * @return a matcher on the bytes between the buffer's position and limit, its offsets are in bytes
+     * @throws IllegalStateException if the expression can match non-ASCII characters, see isAsciiOnly()
+     */
+    public Matcher matcher(ByteBuffer buffer) {
+        return pattern.matcher(bytes(buffer));
+    }
+
+    /**
+     * An expression that is built only from ASCII texts and positive classes like digit(), word(), whitespace(), range() and oneOf(),
+     * never matches a non-ASCII character, so it can be matched on bytes directly.
+     * Any character, negated classes and notOneOf() also match non-ASCII characters, which take more than one byte in UTF-8.
+     * Word boundaries and endOfLine() are not ASCII only either, because they depend on non-ASCII characters around the match.
+     * @return true if the expression can be matched on bytes
+     */
+    public boolean isAsciiOnly() {
+        return asciiOnly;
+    }
+
+    private CharSequence bytes(ByteBuffer buffer) {
+        if (!asciiOnly) {
+            throw new IllegalStateException("Regular expression " + regExpString + " can match non-ASCII characters, so it cannot be matched on bytes");
+        }
+        return new ByteCharSequence(buffer);
+    }
+
+    Prefilter prefilter() {
+        return prefilter;
+    }
+
+    public Backend backend() {
+        return backend;
+    }
+
+    private Engine selectEngine(List<Node> nodes, Backend backend) {
+        if (backend == Backend.JDK) {
+            return jdkEngine;
+        }
+        if (backend == Backend.DFA) {
+            DfaEngine dfaEngine = DfaEngine.of(nodes, jdkEngine, prefilter);
+            return dfaEngine != null ? dfaEngine : jdkEngine;
+        }
+        LiteralEngine literalEngine = LiteralEngine.of(nodes, jdkEngine.groupCount());
+        if (literalEngine != null) {
+            return literalEngine;
+        }
+        if (!Analyzer.analyze(nodes).isLinear()) {
+            DfaEngine dfaEngine = DfaEngine.of(nodes, jdkEngine, prefilter);
+            if (dfaEngine != null) {
+                return dfaEngine;
+            }
+        }
+        return jdkEngine;
+    }
+
+    Engine engine() {
+        return engine;
+    }
+
+    // -------------------------
+    // BUILD
+
+    public String toString() {
+        return regExpString;
+    }
+
+    public Pattern pattern() {
+        return pattern;
+    }
+
+    public Matcher matcher(CharSequence text) {
+        return pattern.matcher(text);
+    }
+
+    /**
+     * Returns a matcher that is reused by the current thread: the next call to reusedMatcher on this CompiledRegExp from the same thread resets it to the new text.
+     * Other methods, like find and matches, do not touch it.
+     * So do not hold on to the matcher, or pass it to another thread; use matcher(text) for that.
+     * @param text the text to match
+     * @return
+     */
+    public Matcher reusedMatcher(CharSequence text) {
+        Matcher matcher = reusedMatcher.get();
+        if (matcher == null) {
+            matcher = pattern.matcher(text);
+            reusedMatcher.set(matcher);
+            return matcher;
+        }
+        return matcher.reset(text);
+    }
+}
@@ -0,0 +1,654 @@
+package org.tbee.regexpbuilder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Matches an expression in time linear to the length of the text, by running a DFA instead of backtracking.
+ * The expression is compiled into an NFA, and the DFA states (sets of NFA states) are built lazily, while matching, and cached.
+ * When the offsets of a match are needed, a DFA that keeps its NFA states in the order a backtracking engine would try them
+ * finds the end of the match that java.util.regex would find, and a DFA of the reversed expression finds its start.
+ * java.util.regex then only determines the groups, by matching exactly that region, which it is known to match.
+ *
+ * Only expressions without back references, possessive quantifiers, atomic groups, anchors other than a leading ^ and trailing $,
+ * and repetitions of something that can match empty, like (a*)*, can be compiled.
+ * Text containing surrogate pairs is passed to java.util.regex, because the DFA works per char instead of per code point.
+ */
+final class DfaEngine extends Engine {
+
+    private static final int MAX_NFA_STATES = 10_000;
+    private static final int MAX_DFA_STATES = 10_000; // per DFA; beyond this, states are still computed but no longer cached
+    private static final int UNKNOWN = -1;
+    private static final int NO_MATCH = 0;
+    private static final int MATCH = 1;
+
+    private final JdkEngine jdkEngine;
+    private final Prefilter prefilter;
+    private final boolean startAnchored;
+    private final boolean endAnchored;
+    private final int[] bounds; // the first char of each alphabet class, except class 0
+    private final int[] asciiClass;
+    private final Dfa anchoredDfa; // whether the whole text matches
+    private final Dfa unanchoredDfa; // whether there is a match
+    private final Dfa leftmostDfa; // the end of the first match, as a backtracking engine would choose it
+    private final Dfa reverseDfa; // the start of a match, from its end
+
+    private DfaEngine(JdkEngine jdkEngine, Prefilter prefilter, boolean startAnchored, boolean endAnchored, Nfa nfa, Nfa reverseNfa) {
+        this.jdkEngine = jdkEngine;
+        this.prefilter = prefilter;
+        this.startAnchored = startAnchored;
+        this.endAnchored = endAnchored;
+
+        // chars that are in the same ranges of every state behave the same, so the DFA only needs a transition per class of them
+        TreeSet<Integer> boundSet = new TreeSet<>();
+        for (int[] ranges : nfa.ranges) {
+            if (ranges != null) {
+                for (int i = 0; i < ranges.length; i += 2) {
+                    boundSet.add(ranges[i]);
+                    if (ranges[i + 1] < Character.MAX_VALUE) {
+                        boundSet.add(ranges[i + 1] + 1);
+                    }
+                }
+            }
+        }
+        boundSet.remove(0);
+        bounds = boundSet.stream().mapToInt(Integer::intValue).toArray();
+        asciiClass = new int[128];
+        for (int c = 0; c < 128; c++) {
+            asciiClass[c] = classOf(bounds, (char) c);
+        }
+        int classCount = bounds.length + 1;
+        BitSet[] classes = classes(nfa, bounds);
+        anchoredDfa = new Dfa(nfa, classes, classCount, nfa.start, false);
+        unanchoredDfa = new Dfa(nfa, classes, classCount, nfa.unanchoredStart, false);
+        leftmostDfa = new Dfa(nfa, classes, classCount, startAnchored ? nfa.start : nfa.unanchoredStart, true);
+        reverseDfa = new Dfa(reverseNfa, classes(reverseNfa, bounds), classCount, reverseNfa.start, false);
+    }
+
+    /**
+     * @return per NFA state the alphabet classes it consumes, null if it does not consume
+     */
+    private static BitSet[] classes(Nfa nfa, int[] bounds) {
+        int classCount = bounds.length + 1;
+        BitSet[] classes = new BitSet[nfa.ranges.size()];
+        for (int state = 0; state < classes.length; state++) {
+            int[] ranges = nfa.ranges.get(state);
+            if (ranges != null) {
+                classes[state] = new BitSet(classCount);
+                for (int cls = 0; cls < classCount; cls++) {
+                    if (contains(ranges, cls == 0 ? 0 : bounds[cls - 1])) {
+                        classes[state].set(cls);
+                    }
+                }
+            }
+        }
+        return classes;
+    }
+
+    /**
+     * @return the engine, or null if the nodes cannot be matched by a DFA
+     */
+    static DfaEngine of(List<Node> nodes, JdkEngine jdkEngine, Prefilter prefilter) {
+        List<Node> body = new ArrayList<>(nodes);
+        boolean startAnchored = !body.isEmpty() && body.get(0) instanceof Node.Anchor anchor && anchor.regExp().equals("^");
+        if (startAnchored) {
+            body.remove(0);
+        }
+        boolean endAnchored = !body.isEmpty() && body.get(body.size() - 1) instanceof Node.Anchor anchor && anchor.regExp().equals("$");
+        if (endAnchored) {
+            body.remove(body.size() - 1);
+        }
+        if (!body.stream().allMatch(DfaEngine::isSupported)) {
+            return null;
+        }
+        Nfa nfa = new Nfa(false);
+        Nfa reverseNfa = new Nfa(true);
+        if (!nfa.build(body) || !reverseNfa.build(body)) {
+            return null;
+        }
+        return new DfaEngine(jdkEngine, prefilter, startAnchored, endAnchored, nfa, reverseNfa);
+    }
+
+    static boolean isSupported(Node node) {
+        if (node instanceof Node.Literal) {
+            return true;
+        }
+        if (node instanceof Node.Shorthand shorthand) {
+            return CharSet.of(shorthand) != null;
+        }
+        if (node instanceof Node.CharClass) {
+            return true;
+        }
+        if (node instanceof Node.Group group) {
+            return isSupported(group.content());
+        }
+        if (node instanceof Node.NonCapturingGroup group) {
+            return !group.atomic() && isSupported(group.content());
+        }
+        if (node instanceof Node.Sequence sequence) {
+            return sequence.nodes().stream().allMatch(DfaEngine::isSupported);
+        }
+        if (node instanceof Node.Alternation alternation) {
+            return alternation.alternatives().stream().allMatch(DfaEngine::isSupported);
+        }
+        if (node instanceof Node.Quantifier quantifier) {
+            // a reluctant quantifier is supported by ordering the NFA transitions so fewer iterations are preferred;
+            // java.util.regex ends a loop when an iteration matches empty, which the NFA does not model, so such a loop is not supported
+            return quantifier.mode() != Node.Quantifier.Mode.POSSESSIVE
+                    && !Node.isEmpty(quantifier.atom())
+                    && !(quantifier.atom() instanceof Node.Quantifier)
+                    && (quantifier.max() == 1 || !Analyzer.nullable(quantifier.atom()))
+                    && isSupported(quantifier.atom());
+        }
+        return false;
+    }
+
+    // -------------------------
+    // MATCH
+
+    int groupCount() {
+        return jdkEngine.groupCount();
+    }
+
+    boolean find(CharSequence text, int from, int[] offsets) {
+        int result = find(text, from);
+        if (result == NO_MATCH) {
+            return false;
+        }
+        if (result == MATCH && offsets == null) {
+            return true;
+        }
+        if (result == MATCH && locate(text, from, offsets)) {
+            return true;
+        }
+        return jdkEngine.find(text, from, offsets);
+    }
+
+    /**
+     * Find where the first match is with the DFAs, and let java.util.regex determine the groups in only that region.
+     * @return false if the DFAs cannot tell, because of a surrogate char
+     */
+    private boolean locate(CharSequence text, int from, int[] offsets) {
+        if (prefilter.prefix() != null) {
+            from = prefilter.indexOf(text, prefilter.prefix(), from);
+        }
+        if (!endAnchored) {
+            int end = leftmostEnd(text, from);
+            int start = end < 0 ? -1 : reverseStart(text, from, end);
+            return start >= 0 && jdkEngine.matches(text, start, end, offsets);
+        }
+
+        // $ matches at the end of the text or before a final line terminator, the first match starts where the earliest match ending at one of those does
+        int start = -1;
+        for (int end = Math.max(from, text.length() - 2); end <= text.length(); end++) {
+            if (isEnd(text, end)) {
+                int candidate = reverseStart(text, from, end);
+                if (candidate >= 0 && (start < 0 || candidate < start)) {
+                    start = candidate;
+                }
+            }
+        }
+        // which of those ends is used depends on the preferences of the quantifiers, so leave that to java.util.regex
+        return start >= 0 && jdkEngine.matches(text, start, -1, offsets);
+    }
+
+    /**
+     * @return the end of the first match that starts at or after from, or -1 if the DFA cannot tell
+     */
+    private int leftmostEnd(CharSequence text, int from) {
+        DState state = leftmostDfa.start;
+        int end = state.accepting ? from : -1;
+        for (int i = from; i < text.length() && !state.dead; i++) {
+            char c = text.charAt(i);
+            if (Character.isSurrogate(c)) {
+                return -1;
+            }
+            state = leftmostDfa.next(state, classOf(c));
+            if (state.accepting) {
+                end = i + 1;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * @return the lowest position at or after from where a match ending at end starts, or -1 if there is none or the DFA cannot tell
+     */
+    private int reverseStart(CharSequence text, int from, int end) {
+        DState state = reverseDfa.start;
+        int start = state.accepting ? end : -1;
+        for (int i = end - 1; i >= from && !state.dead; i--) {
+            char c = text.charAt(i);
+            if (Character.isSurrogate(c)) {
+                return -1;
+            }
+            state = reverseDfa.next(state, classOf(c));
+            if (state.accepting) {
+                start = i;
+            }
+        }
+        return start;
+    }
+
+    boolean matches(CharSequence text, int[] offsets) {
+        int result = matches(text);
+        if (result == NO_MATCH) {
+            return false;
+        }
+        if (result == MATCH && offsets == null) {
+            return true;
+        }
+        return jdkEngine.matches(text, offsets);
+    }
+
+    private int matches(CharSequence text) {
+        DState state = anchoredDfa.start;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isSurrogate(c)) {
+                return UNKNOWN;
+            }
+            state = anchoredDfa.next(state, classOf(c));
+            if (state.dead) {
+                return NO_MATCH;
+            }
+        }
+        return state.accepting ? MATCH : NO_MATCH;
+    }
+
+    private int find(CharSequence text, int from) {
+        if (startAnchored && from > 0) {
+            return NO_MATCH; // ^ only matches at the start of the text
+        }
+        if (prefilter.prefix() != null) {
+            int idx = prefilter.indexOf(text, prefilter.prefix(), from);
+            if (idx < 0 || (startAnchored && idx > 0)) {
+                return NO_MATCH;
+            }
+            from = idx;
+        }
+        else if (prefilter.required() != null && prefilter.indexOf(text, prefilter.required(), from) < 0) {
+            return NO_MATCH;
+        }
+
+        Dfa dfa = startAnchored ? anchoredDfa : unanchoredDfa;
+        DState state = dfa.start;
+        if (state.accepting && (!endAnchored || isEnd(text, from))) {
+            return MATCH;
+        }
+        for (int i = from; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isSurrogate(c)) {
+                return UNKNOWN;
+            }
+            state = dfa.next(state, classOf(c));
+            if (state.dead) {
+                return NO_MATCH;
+            }
+            if (state.accepting && (!endAnchored || isEnd(text, i + 1))) {
+                return MATCH;
+            }
+        }
+        return NO_MATCH;
+    }
+
+    /**
+     * Where $ matches: at the end of the text, or before a line terminator that ends the text.
+     */
+    private static boolean isEnd(CharSequence text, int idx) {
+        int remaining = text.length() - idx;
+        if (remaining == 0) {
+            return true;
+        }
+        if (remaining == 2) {
+            return text.charAt(idx) == '\r' && text.charAt(idx + 1) == '\n';
+        }
+        if (remaining == 1) {
+            char c = text.charAt(idx);
+            if (c == '\n') {
+                return idx == 0 || text.charAt(idx - 1) != '\r';
+            }
+            return c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+        }
+        return false;
+    }
+
+    private int classOf(char c) {
+        return c < 128 ? asciiClass[c] : classOf(bounds, c);
+    }
+
+    private static int classOf(int[] bounds, char c) {
+        int idx = Arrays.binarySearch(bounds, c);
+        return idx >= 0 ? idx + 1 : -(idx + 1);
+    }
+
+    // -------------------------
+    // CHARACTERS
+
+    /**
+     * The engine works on chars, so code points outside the basic multilingual plane are clipped.
+     * @return the ranges of chars as from-to pairs
+     */
+    private static int[] ranges(CharSet set) {
+        return set.intersect(CharSet.range(0, Character.MAX_VALUE)).ranges();
+    }
+
+    private static boolean contains(int[] ranges, int c) {
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (c >= ranges[i] && c <= ranges[i + 1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // -------------------------
+    // NFA
+
+    /**
+     * A Thompson NFA: every state either consumes one char in its ranges and moves to its target, or has only epsilon transitions.
+     * The epsilon transitions of a state are in the order in which a backtracking engine tries them.
+     */
+    private static final class Nfa {
+        private final boolean reversed; // matches the reversed text, for finding the start of a match from its end
+        private final List<int[]> ranges = new ArrayList<>(); // per state, null if it does not consume a char
+        private final List<Integer> targets = new ArrayList<>();
+        private final List<List<Integer>> epsilons = new ArrayList<>();
+        private int start;
+        private int unanchoredStart; // first tries a match at the current position, and otherwise skips a char and tries again
+        private int accept;
+
+        Nfa(boolean reversed) {
+            this.reversed = reversed;
+        }
+
+        /**
+         * @return false if the NFA becomes too large
+         */
+        boolean build(List<Node> nodes) {
+            start = newState();
+            int end = start;
+            for (Node node : inOrder(nodes)) {
+                int[] fragment = fragment(node);
+                if (fragment == null) {
+                    return false;
+                }
+                epsilon(end, fragment[0]);
+                end = fragment[1];
+            }
+            accept = end;
+
+            unanchoredStart = newState();
+            epsilon(unanchoredStart, start);
+            int skip = newState();
+            epsilon(unanchoredStart, skip);
+            ranges.set(skip, new int[]{0, Character.MAX_VALUE});
+            targets.set(skip, unanchoredStart);
+            return true;
+        }
+
+        /**
+         * @return the start and end state of the fragment, or null if the NFA becomes too large
+         */
+        private int[] fragment(Node node) {
+            if (ranges.size() > MAX_NFA_STATES) {
+                return null;
+            }
+            if (node instanceof Node.Literal literal) {
+                int start = newState();
+                int end = start;
+                for (int i = 0; i < literal.text().length(); i++) {
+                    char c = literal.text().charAt(reversed ? literal.text().length() - 1 - i : i);
+                    end = consume(end, new int[]{c, c});
+                }
+                return new int[]{start, end};
+            }
+            if (node instanceof Node.Shorthand shorthand) {
+                int start = newState();
+                return new int[]{start, consume(start, ranges(CharSet.of(shorthand)))};
+            }
+            if (node instanceof Node.CharClass charClass) {
+                int start = newState();
+                return new int[]{start, consume(start, ranges(charClass.set()))};
+            }
+            if (node instanceof Node.Group group) {
+                return fragment(group.content());
+            }
+            if (node instanceof Node.NonCapturingGroup group) {
+                return fragment(group.content());
+            }
+            if (node instanceof Node.Sequence sequence) {
+                int start = newState();
+                int end = start;
+                for (Node child : inOrder(sequence.nodes())) {
+                    int[] fragment = fragment(child);
+                    if (fragment == null) {
+                        return null;
+                    }
+                    epsilon(end, fragment[0]);
+                    end = fragment[1];
+                }
+                return new int[]{start, end};
+            }
+            if (node instanceof Node.Alternation alternation) {
+                int start = newState();
+                int end = newState();
+                for (Node alternative : alternation.alternatives()) {
+                    int[] fragment = fragment(alternative);
+                    if (fragment == null) {
+                        return null;
+                    }
+                    epsilon(start, fragment[0]);
+                    epsilon(fragment[1], end);
+                }
+                return new int[]{start, end};
+            }
+            Node.Quantifier quantifier = (Node.Quantifier) node;
+            boolean greedy = quantifier.mode() == Node.Quantifier.Mode.GREEDY;
+            int start = newState();
+            int end = start;
+            for (int i = 0; i < quantifier.min(); i++) {
+                int[] fragment = fragment(quantifier.atom());
+                if (fragment == null) {
+                    return null;
+                }
+                epsilon(end, fragment[0]);
+                end = fragment[1];
+            }
+            if (quantifier.max() < 0) {
+                int[] fragment = fragment(quantifier.atom());
+                if (fragment == null) {
+                    return null;
+                }
+                int loop = newState();
+                int exit = newState();
+                epsilon(end, loop);
+                choice(loop, fragment[0], exit, greedy);
+                epsilon(fragment[1], loop);
+                return new int[]{start, exit};
+            }
+            int optionalEnd = newState();
+            for (int i = quantifier.min(); i < quantifier.max(); i++) {
+                int[] fragment = fragment(quantifier.atom());
+                if (fragment == null) {
+                    return null;
+                }
+                choice(end, fragment[0], optionalEnd, greedy);
+                end = fragment[1];
+            }
+            epsilon(end, optionalEnd);
+            return new int[]{start, optionalEnd};
+        }
+
+        private List<Node> inOrder(List<Node> nodes) {
+            if (!reversed) {
+                return nodes;
+            }
+            List<Node> reversedNodes = new ArrayList<>(nodes);
+            Collections.reverse(reversedNodes);
+            return reversedNodes;
+        }
+
+        private int newState() {
+            ranges.add(null);
+            targets.add(-1);
+            epsilons.add(new ArrayList<>(2));
+            return ranges.size() - 1;
+        }
+
+        /**
+         * @return the state after the char was consumed
+         */
+        private int consume(int from, int[] charRanges) {
+            int to = newState();
+            int state = newState();
+            epsilon(from, state);
+            ranges.set(state, charRanges);
+            targets.set(state, to);
+            return to;
+        }
+
+        private void epsilon(int from, int to) {
+            epsilons.get(from).add(to);
+        }
+
+        /**
+         * A greedy quantifier first tries another iteration, a reluctant one first tries to skip it.
+         */
+        private void choice(int from, int iteration, int skip, boolean greedy) {
+            epsilon(from, greedy ? iteration : skip);
+            epsilon(from, greedy ? skip : iteration);
+        }
+    }
+
+    // -------------------------
+    // DFA
+
+    /**
+     * A DFA state: the consuming NFA states (and possibly the accepting state) that are reachable.
+     * In a leftmost DFA they are in the order a backtracking engine would try them, otherwise they are sorted.
+     * The transitions are filled in lazily; a reference to a DState can safely be read without locking, because all its fields are final.
+     */
+    private static final class DState {
+        private final int[] nfaStates;
+        private final boolean accepting;
+        private final boolean dead;
+        private final boolean cached;
+        private final DState[] next;
+
+        DState(int[] nfaStates, boolean accepting, boolean dead, boolean cached, int classCount) {
+            this.nfaStates = nfaStates;
+            this.accepting = accepting;
+            this.dead = dead;
+            this.cached = cached;
+            this.next = cached ? new DState[classCount] : null;
+        }
+    }
+
+    private static final class Dfa {
+        private final Nfa nfa;
+        private final BitSet[] classes; // per NFA state the alphabet classes it consumes, null if it does not consume
+        private final int classCount;
+        private final boolean leftmost; // the NFA states that a backtracking engine would try after a match are dropped
+        private final Map<Key, DState> states = new HashMap<>();
+        private final DState start;
+
+        Dfa(Nfa nfa, BitSet[] classes, int classCount, int start, boolean leftmost) {
+            this.nfa = nfa;
+            this.classes = classes;
+            this.classCount = classCount;
+            this.leftmost = leftmost;
+            this.start = state(closure(new int[]{start}, 1));
+        }
+
+        DState next(DState state, int cls) {
+            DState next = state.cached ? state.next[cls] : null;
+            if (next != null) {
+                return next;
+            }
+            synchronized (this) {
+                int[] seeds = new int[state.nfaStates.length];
+                int size = 0;
+                for (int nfaState : state.nfaStates) {
+                    if (classes[nfaState] != null && classes[nfaState].get(cls)) {
+                        seeds[size++] = nfa.targets.get(nfaState);
+                    }
+                }
+                next = state(closure(seeds, size));
+                if (state.cached && next.cached) {
+                    state.next[cls] = next;
+                }
+                return next;
+            }
+        }
+
+        /**
+         * Follow the epsilon transitions depth first, so the states are found in the order a backtracking engine would try them.
+         */
+        private int[] closure(int[] seeds, int size) {
+            BitSet visited = new BitSet(nfa.ranges.size());
+            int[] stack = new int[Math.max(size, 16)];
+            int top = 0;
+            for (int i = size - 1; i >= 0; i--) {
+                stack[top++] = seeds[i];
+            }
+            int[] result = new int[nfa.ranges.size()];
+            int count = 0;
+            while (top > 0) {
+                int nfaState = stack[--top];
+                if (visited.get(nfaState)) {
+                    continue;
+                }
+                visited.set(nfaState);
+                if (classes[nfaState] != null || nfaState == nfa.accept) {
+                    result[count++] = nfaState;
+                }
+                if (nfaState == nfa.accept && leftmost) {
+                    break; // a backtracking engine would stop at this match, and never try the states that follow
+                }
+                List<Integer> targets = nfa.epsilons.get(nfaState);
+                if (top + targets.size() > stack.length) {
+                    stack = Arrays.copyOf(stack, 2 * (top + targets.size()));
+                }
+                for (int i = targets.size() - 1; i >= 0; i--) {
+                    stack[top++] = targets.get(i);
+                }
+            }
+            result = Arrays.copyOf(result, count);
+            if (!leftmost) {
+                Arrays.sort(result); // the order does not matter, so do not let it create more states
+            }
+            return result;
+        }
+
+        private DState state(int[] nfaStates) {
+            Key key = new Key(nfaStates);
+            DState state = states.get(key);
+            if (state == null) {
+                boolean accepting = Arrays.stream(nfaStates).anyMatch(nfaState -> nfaState == nfa.accept);
+                boolean cached = states.size() < MAX_DFA_STATES;
+                state = new DState(nfaStates, accepting, nfaStates.length == 0, cached, classCount);
+                if (cached) {
+                    states.put(key, state);
+                }
+            }
+            return state;
+        }
+    }
+
+    private record Key(int[] nfaStates) {
+        public boolean equals(Object other) {
+            return other instanceof Key key && Arrays.equals(nfaStates, key.nfaStates);
+        }
+
+        public int hashCode() {
+            return Arrays.hashCode(nfaStates);
+        }
+    }
+}
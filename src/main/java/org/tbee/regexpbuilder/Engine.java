@@ -0,0 +1,33 @@
+package org.tbee.regexpbuilder;
+
+/**
+ * Performs the actual matching for a CompiledRegExp.
+ * The results are written into an offsets array: the start and end of group i are at 2*i and 2*i+1, group 0 being the whole match.
+ * Groups that did not participate in the match have -1 as start and end.
+ * Engines must be thread-safe.
+ */
+abstract class Engine {
+
+    /**
+     * @return the number of capturing groups
+     */
+    abstract int groupCount();
+
+    /**
+     * Find the first match that starts at or after from.
+     * @param offsets receives the group offsets, may be null if they are not needed
+     * @return true if a match was found
+     */
+    abstract boolean find(CharSequence text, int from, int[] offsets);
+
+    /**
+     * Match the whole text.
+     * @param offsets receives the group offsets, may be null if they are not needed
+     * @return true if the text matches
+     */
+    abstract boolean matches(CharSequence text, int[] offsets);
+
+    int[] newOffsets() {
+        return new int[2 * (groupCount() + 1)];
+    }
+}
@@ -0,0 +1,239 @@
+package org.tbee.regexpbuilder;
+
+/**
+ * Reads the groups of a match without allocating, for parsing many lines in a loop:
+ * the groups are views on the original text, and numbers are parsed directly from those views.
+ *
+ * <pre>{@code
+ * GroupExtractor extractor = regExp.toGroupExtractor();
+ * for (String line : lines) {
+ *     if (extractor.matches(line)) {
+ *         CharSequence ip = extractor.view("ip");
+ *         int status = extractor.parseInt("status");
+ *     }
+ * }
+ * }</pre>
+ *
+ * An extractor is reused for every match, so it is not thread-safe; create one per thread.
+ * The views are reused as well: view() returns the same instance for a group after every match, so call toString() on it to keep the text.
+ */
+public final class GroupExtractor {
+
+    private final CompiledRegExp compiledRegExp;
+    private final int[] offsets;
+    private final GroupView[] views;
+    private CharSequence text;
+
+    GroupExtractor(CompiledRegExp compiledRegExp) {
+        this.compiledRegExp = compiledRegExp;
+        this.offsets = compiledRegExp.newOffsets();
+        this.views = new GroupView[offsets.length / 2];
+        for (int group = 0; group < views.length; group++) {
+            views[group] = new GroupView();
+        }
+    }
+
+    // -------------------------
+    // MATCH
+
+    /**
+     * @param text the text to search
+     * @return true if a match was found, its groups can then be read
+     */
+    public boolean find(CharSequence text) {
+        return match(text, compiledRegExp.find(text, 0, offsets));
+    }
+
+    /**
+     * @param text the text to match
+     * @return true if the whole text matches, its groups can then be read
+     */
+    public boolean matches(CharSequence text) {
+        return match(text, compiledRegExp.matches(text, offsets));
+    }
+
+    private boolean match(CharSequence text, boolean matched) {
+        this.text = matched ? text : null;
+        return matched;
+    }
+
+    // -------------------------
+    // GROUP
+
+    /**
+     * @return the number of capturing groups
+     */
+    public int groupCount() {
+        return views.length - 1;
+    }
+
+    /**
+     * @param group index of the group, 0 being the whole match
+     * @return the offset of the start of the group, or -1 if it did not participate in the match
+     */
+    public int start(int group) {
+        checkGroup(group);
+        return offsets[2 * group];
+    }
+
+    public int start(String name) {
+        return start(compiledRegExp.indexOf(name));
+    }
+
+    /**
+     * @param group index of the group, 0 being the whole match
+     * @return the offset after the end of the group, or -1 if it did not participate in the match
+     */
+    public int end(int group) {
+        checkGroup(group);
+        return offsets[2 * group + 1];
+    }
+
+    public int end(String name) {
+        return end(compiledRegExp.indexOf(name));
+    }
+
+    /**
+     * @param group index of the group, 0 being the whole match
+     * @return a view on the text matched by the group, which is valid until the next call for the same group; null if the group did not participate
+     */
+    public CharSequence view(int group) {
+        int start = start(group);
+        if (start < 0) {
+            return null;
+        }
+        GroupView view = views[group];
+        view.text = text;
+        view.start = start;
+        view.end = offsets[2 * group + 1];
+        return view;
+    }
+
+    public CharSequence view(String name) {
+        return view(compiledRegExp.indexOf(name));
+    }
+
+    // -------------------------
+    // PARSE
+
+    /**
+     * Parse the text of the group as a decimal int, like Integer.parseInt but without creating a String.
+     * @param group index of the group, 0 being the whole match
+     * @return the number
+     * @throws NumberFormatException if the group did not participate or its text is not an int
+     */
+    public int parseInt(int group) {
+        int start = start(group);
+        if (start < 0) {
+            throw new NumberFormatException("Group " + group + " did not participate in the match");
+        }
+        return parseInt(text, start, offsets[2 * group + 1]);
+    }
+
+    public int parseInt(String name) {
+        return parseInt(compiledRegExp.indexOf(name));
+    }
+
+    /**
+     * Parse the text of the group as a decimal long, like Long.parseLong but without creating a String.
+     * @param group index of the group, 0 being the whole match
+     * @return the number
+     * @throws NumberFormatException if the group did not participate or its text is not a long
+     */
+    public long parseLong(int group) {
+        int start = start(group);
+        if (start < 0) {
+            throw new NumberFormatException("Group " + group + " did not participate in the match");
+        }
+        return parseLong(text, start, offsets[2 * group + 1]);
+    }
+
+    public long parseLong(String name) {
+        return parseLong(compiledRegExp.indexOf(name));
+    }
+
+    // -------------------------
+    // SUPPORT
+
+    private void checkGroup(int group) {
+        if (text == null) {
+            throw new IllegalStateException("No match available");
+        }
+        if (group < 0 || group >= views.length) {
+            throw new IndexOutOfBoundsException("No group " + group);
+        }
+    }
+
+    /**
+     * Parse a decimal int from a part of the text, like Integer.parseInt but without creating a String.
+     */
+    static int parseInt(CharSequence text, int start, int end) {
+        long value = parseLong(text, start, end);
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw numberFormatException(text, start, end);
+        }
+        return (int) value;
+    }
+
+    /**
+     * Parse a decimal long from a part of the text, like Long.parseLong but without creating a String.
+     */
+    static long parseLong(CharSequence text, int start, int end) {
+        if (start == end) {
+            throw numberFormatException(text, start, end);
+        }
+        boolean negative = text.charAt(start) == '-';
+        int idx = negative || text.charAt(start) == '+' ? start + 1 : start;
+        if (idx == end) {
+            throw numberFormatException(text, start, end);
+        }
+        // accumulate negatively, like Long.parseLong, so Long.MIN_VALUE fits
+        long value = 0;
+        for (; idx < end; idx++) {
+            int digit = text.charAt(idx) - '0';
+            if (digit < 0 || digit > 9 || value < (Long.MIN_VALUE + digit) / 10) {
+                throw numberFormatException(text, start, end);
+            }
+            value = value * 10 - digit;
+        }
+        if (!negative && value == Long.MIN_VALUE) {
+            throw numberFormatException(text, start, end);
+        }
+        return negative ? value : -value;
+    }
+
+    private static NumberFormatException numberFormatException(CharSequence text, int start, int end) {
+        return new NumberFormatException("Not a number: \"" + text.subSequence(start, end) + "\"");
+    }
+
+    /**
+     * A CharSequence on a part of the matched text, without copying it.
+     */
+    private static final class GroupView implements CharSequence {
+        private CharSequence text;
+        private int start;
+        private int end;
+
+        public int length() {
+            return end - start;
+        }
+
+        public char charAt(int index) {
+            if (index < 0 || index >= length()) {
+                throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + length());
+            }
+            return text.charAt(start + index);
+        }
+
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > length() || start > end) {
+                throw new IndexOutOfBoundsException("Range [" + start + ", " + end + ") out of bounds for length " + length());
+            }
+            return text.subSequence(this.start + start, this.start + end);
+        }
+
+        public String toString() {
+            return text.subSequence(start, end).toString();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package org.tbee.regexpbuilder;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Matches using java.util.regex, skipping input that cannot match with the prefilter.
+ */
+final class JdkEngine extends Engine {
+
+    private final Pattern pattern;
+    private final Prefilter prefilter;
+    private final int groupCount;
+    private final ThreadLocal<Matcher> threadMatcher = new ThreadLocal<>(); // only used by find and matches, never handed out
+
+    JdkEngine(Pattern pattern, Prefilter prefilter) {
+        this.pattern = pattern;
+        this.prefilter = prefilter;
+        this.groupCount = pattern.matcher("").groupCount();
+    }
+
+    int groupCount() {
+        return groupCount;
+    }
+
+    boolean find(CharSequence text, int from, int[] offsets) {
+        Matcher matcher = matcher(text);
+        if (!prefilter.find(matcher, text, from)) {
+            return false;
+        }
+        copyOffsets(matcher, offsets);
+        return true;
+    }
+
+    boolean matches(CharSequence text, int[] offsets) {
+        Matcher matcher = matcher(text);
+        if (!matcher.matches()) {
+            return false;
+        }
+        copyOffsets(matcher, offsets);
+        return true;
+    }
+
+    /**
+     * Match from start, with the text around the region visible to anchors, like find would see it.
+     * @param end where the match must end, or -1 if it may end anywhere
+     */
+    boolean matches(CharSequence text, int start, int end, int[] offsets) {
+        Matcher matcher = matcher(text);
+        matcher.useTransparentBounds(true);
+        matcher.useAnchoringBounds(false);
+        matcher.region(start, end < 0 ? text.length() : end);
+        if (!(end < 0 ? matcher.lookingAt() : matcher.matches())) {
+            return false;
+        }
+        copyOffsets(matcher, offsets);
+        return true;
+    }
+
+    private Matcher matcher(CharSequence text) {
+        Matcher matcher = threadMatcher.get();
+        if (matcher == null) {
+            matcher = pattern.matcher(text);
+            threadMatcher.set(matcher);
+            return matcher;
+        }
+        return matcher.reset(text);
+    }
+
+    private void copyOffsets(Matcher matcher, int[] offsets) {
+        if (offsets != null) {
+            for (int group = 0; group <= groupCount; group++) {
+                offsets[2 * group] = matcher.start(group);
+                offsets[2 * group + 1] = matcher.end(group);
+            }
+        }
+    }
+}
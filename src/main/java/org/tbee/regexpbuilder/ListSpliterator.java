@@ -0,0 +1,60 @@
+package org.tbee.regexpbuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Splits a list by index in halves, so a parallel stream divides the texts evenly over the workers without copying them.
+ * A list without random access, like a LinkedList, is copied first.
+ */
+final class ListSpliterator<T> implements Spliterator<T> {
+
+    private final List<T> list;
+    private int index;
+    private final int fence;
+
+    ListSpliterator(List<T> list) {
+        this(list instanceof RandomAccess ? list : new ArrayList<>(list), 0, list.size());
+    }
+
+    private ListSpliterator(List<T> list, int index, int fence) {
+        this.list = list;
+        this.index = index;
+        this.fence = fence;
+    }
+
+    public boolean tryAdvance(Consumer<? super T> action) {
+        if (index >= fence) {
+            return false;
+        }
+        action.accept(list.get(index++));
+        return true;
+    }
+
+    public void forEachRemaining(Consumer<? super T> action) {
+        for (; index < fence; index++) {
+            action.accept(list.get(index));
+        }
+    }
+
+    public Spliterator<T> trySplit() {
+        int middle = (index + fence) >>> 1;
+        if (middle <= index) {
+            return null;
+        }
+        Spliterator<T> prefix = new ListSpliterator<>(list, index, middle);
+        index = middle;
+        return prefix;
+    }
+
+    public long estimateSize() {
+        return fence - index;
+    }
+
+    public int characteristics() {
+        return ORDERED | SIZED | SUBSIZED;
+    }
+}
@@ -0,0 +1,89 @@
+package org.tbee.regexpbuilder;
+
+import java.util.List;
+
+/**
+ * Matches expressions that consist of only literal texts, like text("abc") or anyOf("cat", "dog"), with an Aho-Corasick automaton.
+ * This takes time linear to the length of the text, independent of the number of literals.
+ * The results are the same as java.util.regex: the leftmost match, and of the literals matching there the first in the alternation.
+ * Every group in such an expression spans the whole match.
+ */
+final class LiteralEngine extends Engine {
+
+    private final AhoCorasick ahoCorasick;
+    private final int groupCount;
+    private final ThreadLocal<int[]> threadResult = ThreadLocal.withInitial(() -> new int[3]);
+
+    private LiteralEngine(AhoCorasick ahoCorasick, int groupCount) {
+        this.ahoCorasick = ahoCorasick;
+        this.groupCount = groupCount;
+    }
+
+    /**
+     * @return the engine, or null if the nodes are not only literal texts
+     */
+    static LiteralEngine of(List<Node> nodes, int groupCount) {
+        Node node = Node.of(nodes);
+        int groups = 0;
+        boolean inNonCapturingGroup = false;
+        while (true) {
+            if (node instanceof Node.Group group) {
+                node = group.content();
+                groups++;
+                inNonCapturingGroup = false;
+            }
+            // an atomic group would not backtrack into another literal if the first one does not match the whole text
+            else if (node instanceof Node.NonCapturingGroup group && !group.atomic()) {
+                node = group.content();
+                inNonCapturingGroup = true;
+            }
+            else {
+                break;
+            }
+        }
+        List<String> literals;
+        if (node instanceof Node.Alternation alternation) {
+            literals = alternation.literals();
+            if (!inNonCapturingGroup) {
+                groups++;
+            }
+        }
+        else {
+            literals = new Node.Alternation(List.of(node)).literals();
+        }
+        if (literals == null || literals.stream().anyMatch(String::isEmpty) || groups != groupCount) {
+            return null;
+        }
+        return new LiteralEngine(new AhoCorasick(literals.toArray(new String[0])), groupCount);
+    }
+
+    int groupCount() {
+        return groupCount;
+    }
+
+    boolean find(CharSequence text, int from, int[] offsets) {
+        int[] result = threadResult.get();
+        if (!ahoCorasick.find(text, from, result)) {
+            return false;
+        }
+        copyOffsets(result[0], result[1], offsets);
+        return true;
+    }
+
+    boolean matches(CharSequence text, int[] offsets) {
+        if (ahoCorasick.exact(text) < 0) {
+            return false;
+        }
+        copyOffsets(0, text.length(), offsets);
+        return true;
+    }
+
+    private void copyOffsets(int start, int end, int[] offsets) {
+        if (offsets != null) {
+            for (int group = 0; group <= groupCount; group++) {
+                offsets[2 * group] = start;
+                offsets[2 * group + 1] = end;
+            }
+        }
+    }
+}
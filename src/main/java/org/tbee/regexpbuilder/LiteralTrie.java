@@ -0,0 +1,156 @@
+package org.tbee.regexpbuilder;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Renders an alternation of literal texts with their common prefixes factored out,
+ * so "foobar|foobaz|fooqux" becomes "foo(?:ba[rz]|qux)".
+ * Every branch starts with a different character, so the engine does not retry a shared prefix for each alternative.
+ *
+ * The alternatives of an alternation are tried in order, so if one literal is a prefix of another, the order decides which one matches.
+ * The branches are ordered by the first literal that uses them, and an optional rest is reluctant when the shorter literal came first.
+ * If the literals cannot be ordered like that, the alternation is not factored.
+ */
+final class LiteralTrie {
+
+    private final Map<Integer, LiteralTrie> children = new LinkedHashMap<>(); // in the order of the first literal that uses them
+    private int end = -1; // the index of the first literal ending here
+    private int min = Integer.MAX_VALUE; // the lowest index of the literals passing through here
+    private int max = -1; // the highest index of the literals passing through here
+
+    private LiteralTrie() {
+    }
+
+    /**
+     * @return false if the literals cannot be factored, and nothing was appended
+     */
+    static boolean appendTo(List<String> literals, StringBuilder sb) {
+        if (literals.size() < 2) {
+            return false;
+        }
+        LiteralTrie root = new LiteralTrie();
+        for (int i = 0; i < literals.size(); i++) {
+            if (literals.get(i).isEmpty()) {
+                return false;
+            }
+            root.add(literals.get(i), i);
+        }
+        if (!root.isOrdered()) {
+            return false;
+        }
+        root.appendAlternatives(sb, false);
+        return true;
+    }
+
+    private void add(String literal, int idx) {
+        LiteralTrie node = this;
+        node.mark(idx);
+        for (int i = 0; i < literal.length(); i += Character.charCount(literal.codePointAt(i))) {
+            node = node.children.computeIfAbsent(literal.codePointAt(i), c -> new LiteralTrie());
+            node.mark(idx);
+        }
+        if (node.end < 0) {
+            node.end = idx;
+        }
+    }
+
+    private void mark(int idx) {
+        min = Math.min(min, idx);
+        max = Math.max(max, idx);
+    }
+
+    /**
+     * A literal ending here must come before or after all literals in a child, otherwise their order cannot be kept.
+     */
+    private boolean isOrdered() {
+        for (LiteralTrie child : children.values()) {
+            if (end >= 0 && child.min < end && child.max > end) {
+                return false;
+            }
+            if (!child.isOrdered()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // -------------------------
+    // RENDER
+
+    /**
+     * The alternatives for the remainder after this node, separated by |
+     * @param withEnd include the literal ending at this node as an empty alternative
+     */
+    private void appendAlternatives(StringBuilder sb, boolean withEnd) {
+        boolean endPending = withEnd && end >= 0;
+        boolean first = true;
+        for (Map.Entry<Integer, LiteralTrie> entry : children.entrySet()) {
+            if (endPending && end < entry.getValue().min) {
+                if (!first) {
+                    sb.append('|');
+                }
+                first = false;
+                endPending = false;
+            }
+            if (!first) {
+                sb.append('|');
+            }
+            appendChild(entry.getKey(), entry.getValue(), sb);
+            first = false;
+        }
+        if (endPending) {
+            sb.append('|');
+        }
+    }
+
+    private void appendChild(int codePoint, LiteralTrie child, StringBuilder sb) {
+        Node.escape(Character.toString(codePoint), sb, false);
+        child.appendRemainder(sb);
+    }
+
+    /**
+     * The remainder after this node, as a single atom if it is optional or has alternatives.
+     */
+    private void appendRemainder(StringBuilder sb) {
+        if (children.isEmpty()) {
+            return;
+        }
+        if (end < 0 && children.size() == 1) {
+            Map.Entry<Integer, LiteralTrie> entry = children.entrySet().iterator().next();
+            appendChild(entry.getKey(), entry.getValue(), sb);
+            return;
+        }
+
+        // an optional remainder is rendered as a quantifier, unless the literal ending here is somewhere in between the others
+        int childrenMin = children.values().stream().mapToInt(child -> child.min).min().getAsInt();
+        int childrenMax = children.values().stream().mapToInt(child -> child.max).max().getAsInt();
+        if (end >= 0 && end > childrenMin && end < childrenMax) {
+            sb.append("(?:");
+            appendAlternatives(sb, true);
+            sb.append(')');
+            return;
+        }
+
+        boolean allLeaves = children.values().stream().allMatch(child -> child.children.isEmpty());
+        if (allLeaves && children.size() > 1) {
+            sb.append('[');
+            for (int codePoint : children.keySet()) {
+                Node.escape(Character.toString(codePoint), sb, true);
+            }
+            sb.append(']');
+        }
+        else if (allLeaves) {
+            Node.escape(Character.toString(children.keySet().iterator().next()), sb, false);
+        }
+        else {
+            sb.append("(?:");
+            appendAlternatives(sb, false);
+            sb.append(')');
+        }
+        if (end >= 0) {
+            sb.append(end < childrenMin ? "??" : "?");
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package org.tbee.regexpbuilder;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a file by memory-mapping it region by region and decoding the bytes directly from the mapping, without copying them into the heap first.
+ * A character that is split over two regions is decoded from the start of the next region, which begins at the first byte that was not decoded.
+ */
+final class MappedFileReader extends Reader {
+
+    private static final long REGION_SIZE = 1L << 26;
+
+    private final long regionSize;
+    private final FileChannel channel;
+    private final CharsetDecoder decoder;
+    private final long size;
+    private final CharBuffer spare = CharBuffer.allocate(2); // for when a surrogate pair does not fit in the caller's buffer
+    private long regionStart;
+    private MappedByteBuffer region;
+    private boolean flushed = false;
+
+    MappedFileReader(Path path, Charset charset) throws IOException {
+        this(path, charset, REGION_SIZE);
+    }
+
+    MappedFileReader(Path path, Charset charset, long regionSize) throws IOException {
+        this.regionSize = regionSize;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.size = channel.size();
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        spare.limit(0);
+        map(0);
+    }
+
+    private void map(long start) throws IOException {
+        regionStart = start;
+        region = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(regionSize, size - start));
+    }
+
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (spare.hasRemaining()) {
+            cbuf[off] = spare.get();
+            return 1;
+        }
+        CharBuffer out = CharBuffer.wrap(cbuf, off, len);
+        while (true) {
+            boolean last = regionStart + region.limit() >= size;
+            CoderResult result = decoder.decode(region, out, last);
+            if (out.position() > off) {
+                return out.position() - off;
+            }
+            if (result.isOverflow()) {
+                spare.clear();
+                decoder.decode(region, spare, last);
+                spare.flip();
+                cbuf[off] = spare.get();
+                return 1;
+            }
+            if (!last) {
+                map(regionStart + region.position());
+                continue;
+            }
+            if (!flushed) {
+                flushed = true;
+                decoder.flush(out);
+                if (out.position() > off) {
+                    return out.position() - off;
+                }
+            }
+            return -1;
+        }
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+}
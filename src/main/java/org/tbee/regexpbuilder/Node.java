@@ -0,0 +1,296 @@
+package org.tbee.regexpbuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The building blocks of a RegExp.
+ * The builder methods compose these nodes into a tree, which is rendered into the regular expression string in a single pass.
+ * All nodes are immutable, so a tree can be shared between RegExps.
+ */
+sealed interface Node {
+
+    void appendTo(StringBuilder sb);
+
+    static Node of(RegExp regExp) {
+        return of(regExp.nodes());
+    }
+
+    static Node of(List<Node> nodes) {
+        return nodes.size() == 1 ? nodes.get(0) : new Sequence(List.copyOf(nodes));
+    }
+
+    static String render(List<Node> nodes) {
+        StringBuilder sb = new StringBuilder();
+        for (Node node : nodes) {
+            node.appendTo(sb);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * A quantifier applies to the last atom that precedes it, so quantifying "abc" results in "abc?", which is "ab" followed by an optional "c".
+     * This splits the nodes accordingly, so the tree reflects what the regular expression actually does.
+     */
+    static List<Node> quantify(List<Node> nodes, Quantifier.Kind kind, int min, int max) {
+        List<Node> result = new ArrayList<>(nodes.size() + 1);
+        result.addAll(nodes);
+        Node last = result.isEmpty() ? new Sequence(List.of()) : result.remove(result.size() - 1);
+        while (last instanceof Sequence sequence && !sequence.nodes().isEmpty()) {
+            result.addAll(sequence.nodes().subList(0, sequence.nodes().size() - 1));
+            last = sequence.nodes().get(sequence.nodes().size() - 1);
+        }
+        if (last instanceof Literal literal && literal.text().codePointCount(0, literal.text().length()) > 1) {
+            int split = literal.text().offsetByCodePoints(literal.text().length(), -1);
+            result.add(new Literal(literal.text().substring(0, split)));
+            last = new Literal(literal.text().substring(split));
+        }
+        // a quantifier directly on a greedy quantifier changes its mode: "x*?" is reluctant and "x*+" possessive
+        if (last instanceof Quantifier quantifier && quantifier.mode() == Quantifier.Mode.GREEDY && !isEmpty(quantifier.atom())) {
+            if (kind == Quantifier.Kind.OPTIONAL) {
+                result.add(quantifier.withMode(Quantifier.Mode.RELUCTANT));
+                return result;
+            }
+            if (kind == Quantifier.Kind.ONE_OR_MORE) {
+                result.add(quantifier.withMode(Quantifier.Mode.POSSESSIVE));
+                return result;
+            }
+        }
+        // any other quantifier on a quantifier would not parse, like "x+*" or "x*??", so the inner one is quantified as a group
+        if (last instanceof Quantifier quantifier && !isEmpty(quantifier.atom())) {
+            last = new NonCapturingGroup(false, last);
+        }
+        result.add(new Quantifier(last, kind, min, max, Quantifier.Mode.GREEDY));
+        return result;
+    }
+
+    // -------------------------
+    // NODES
+
+    /**
+     * Text that is matched as-is.
+     */
+    record Literal(String text) implements Node {
+        public void appendTo(StringBuilder sb) {
+            escape(text, sb, false);
+        }
+    }
+
+    /**
+     * A predefined character class or escape, like \d or \t.
+     */
+    record Shorthand(String regExp) implements Node {
+        public void appendTo(StringBuilder sb) {
+            sb.append(regExp);
+        }
+    }
+
+    /**
+     * A zero-width position, like ^ or \b.
+     */
+    record Anchor(String regExp) implements Node {
+        public void appendTo(StringBuilder sb) {
+            sb.append(regExp);
+        }
+    }
+
+    /**
+     * Matches one character of the set; the set is normalized, so how it was composed does not show in the rendering.
+     */
+    record CharClass(CharSet set) implements Node {
+        public void appendTo(StringBuilder sb) {
+            set.appendTo(sb);
+        }
+    }
+
+    /**
+     * A capturing group, the name is only used to look up the group's index.
+     */
+    record Group(String name, Node content) implements Node {
+        public void appendTo(StringBuilder sb) {
+            sb.append('(');
+            content.appendTo(sb);
+            sb.append(')');
+        }
+    }
+
+    /**
+     * A group that does not capture, if atomic the engine does not backtrack into it once it has matched.
+     */
+    record NonCapturingGroup(boolean atomic, Node content) implements Node {
+        public void appendTo(StringBuilder sb) {
+            sb.append(atomic ? "(?>" : "(?:");
+            if (content instanceof Alternation alternation) {
+                alternation.appendAlternativesTo(sb);
+            }
+            else {
+                content.appendTo(sb);
+            }
+            sb.append(')');
+        }
+    }
+
+    record BackReference(int groupIdx) implements Node {
+        public void appendTo(StringBuilder sb) {
+            sb.append('\\').append(groupIdx);
+        }
+    }
+
+    /**
+     * @param min the minimum number of occurrences
+     * @param max the maximum number of occurrences, -1 for unbounded
+     * @param mode greedy matches as many occurrences as possible, reluctant as few as possible, and possessive as many as possible without ever giving any back
+     */
+    record Quantifier(Node atom, Kind kind, int min, int max, Mode mode) implements Node {
+        enum Kind {OPTIONAL, ZERO_OR_MORE, ONE_OR_MORE, EXACTLY, AT_LEAST, BETWEEN}
+        enum Mode {GREEDY, RELUCTANT, POSSESSIVE}
+
+        Quantifier withMode(Mode mode) {
+            return new Quantifier(atom, kind, min, max, mode);
+        }
+
+        public void appendTo(StringBuilder sb) {
+            atom.appendTo(sb);
+            switch (kind) {
+                case OPTIONAL -> sb.append('?');
+                case ZERO_OR_MORE -> sb.append('*');
+                case ONE_OR_MORE -> sb.append('+');
+                case EXACTLY -> sb.append('{').append(min).append('}');
+                case AT_LEAST -> sb.append('{').append(min).append(",}");
+                case BETWEEN -> sb.append('{').append(min).append(',').append(max).append('}');
+            }
+            switch (mode) {
+                case GREEDY -> {}
+                case RELUCTANT -> sb.append('?');
+                case POSSESSIVE -> sb.append('+');
+            }
+        }
+    }
+
+    /**
+     * Rendered as a capturing group.
+     * If all alternatives are literal texts, their common prefixes are factored out.
+     */
+    record Alternation(List<Node> alternatives) implements Node {
+        public void appendTo(StringBuilder sb) {
+            sb.append('(');
+            appendAlternativesTo(sb);
+            sb.append(')');
+        }
+
+        /**
+         * The alternatives without the surrounding group, for when the alternation is already in a group.
+         */
+        void appendAlternativesTo(StringBuilder sb) {
+            List<String> literals = literals();
+            if (literals != null && LiteralTrie.appendTo(literals, sb)) {
+                return;
+            }
+            for (int i = 0; i < alternatives.size(); i++) {
+                if (i > 0) {
+                    sb.append('|');
+                }
+                alternatives.get(i).appendTo(sb);
+            }
+        }
+
+        /**
+         * @return the texts of the alternatives, or null if not all alternatives are literal texts
+         */
+        List<String> literals() {
+            List<String> literals = new ArrayList<>(alternatives.size());
+            for (Node alternative : alternatives) {
+                String literal = literal(alternative);
+                if (literal == null) {
+                    return null;
+                }
+                literals.add(literal);
+            }
+            return literals;
+        }
+
+        private static String literal(Node node) {
+            if (node instanceof Literal literal) {
+                return literal.text();
+            }
+            if (node instanceof Sequence sequence) {
+                StringBuilder sb = new StringBuilder();
+                for (Node child : sequence.nodes()) {
+                    if (!(child instanceof Literal literal)) {
+                        return null;
+                    }
+                    sb.append(literal.text());
+                }
+                return sb.toString();
+            }
+            return null;
+        }
+    }
+
+    record Sequence(List<Node> nodes) implements Node {
+        public void appendTo(StringBuilder sb) {
+            for (Node node : nodes) {
+                node.appendTo(sb);
+            }
+        }
+    }
+
+    // -------------------------
+    // SUPPORT
+
+    /**
+     * @return true if the node matches only the empty string without being an atom, so a quantifier on it applies to whatever precedes it
+     */
+    static boolean isEmpty(Node node) {
+        if (node instanceof Literal literal) {
+            return literal.text().isEmpty();
+        }
+        if (node instanceof Sequence sequence) {
+            return sequence.nodes().stream().allMatch(Node::isEmpty);
+        }
+        return false;
+    }
+
+    /**
+     * Append the text to the buffer, escaping any characters that have a special meaning in regular expressions.
+     * Inside a character class other characters are special than outside of it.
+     */
+    static void escape(String s, StringBuilder sb, boolean inClass) {
+        Escape.escape(s, sb, inClass);
+    }
+
+    final class Escape {
+        private static final int OUTSIDE_CLASS = 1;
+        private static final int INSIDE_CLASS = 2;
+        private static final byte[] TABLE = new byte[128];
+        static {
+            for (char c : "\\^$.|?*+()[]{}".toCharArray()) {
+                TABLE[c] |= OUTSIDE_CLASS;
+            }
+            for (char c : "\\^-[]&".toCharArray()) {
+                TABLE[c] |= INSIDE_CLASS;
+            }
+        }
+
+        private Escape() {
+        }
+
+        private static void escape(String s, StringBuilder sb, boolean inClass) {
+            int mask = inClass ? INSIDE_CLASS : OUTSIDE_CLASS;
+            int from = 0; // start of the part that has not been appended yet
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c < 128 && (TABLE[c] & mask) != 0) {
+                    sb.append(s, from, i).append('\\');
+                    from = i;
+                }
+            }
+            if (from == 0) {
+                sb.append(s);
+            }
+            else {
+                sb.append(s, from, s.length());
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package org.tbee.regexpbuilder;
+
+import java.util.regex.MatchResult;
+
+/**
+ * A MatchResult on top of the offsets array of an Engine.
+ */
+final class OffsetMatchResult implements MatchResult {
+
+    private final CharSequence text;
+    private final int[] offsets;
+
+    OffsetMatchResult(CharSequence text, int[] offsets) {
+        this.text = text;
+        this.offsets = offsets;
+    }
+
+    public int start() {
+        return start(0);
+    }
+
+    public int start(int group) {
+        checkGroup(group);
+        return offsets[2 * group];
+    }
+
+    public int end() {
+        return end(0);
+    }
+
+    public int end(int group) {
+        checkGroup(group);
+        return offsets[2 * group + 1];
+    }
+
+    public String group() {
+        return group(0);
+    }
+
+    public String group(int group) {
+        checkGroup(group);
+        int start = offsets[2 * group];
+        return start < 0 ? null : text.subSequence(start, offsets[2 * group + 1]).toString();
+    }
+
+    public int groupCount() {
+        return offsets.length / 2 - 1;
+    }
+
+    private void checkGroup(int group) {
+        if (group < 0 || group > groupCount()) {
+            throw new IndexOutOfBoundsException("No group " + group);
+        }
+    }
+
+    public String toString() {
+        return "OffsetMatchResult[" + start() + "-" + end() + ": " + group() + "]";
+    }
+}
@@ -0,0 +1,343 @@
+package org.tbee.regexpbuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rewrites a tree into an equivalent one that renders smaller, before it is compiled:
+ * - adjacent texts are merged and nested sequences flattened,
+ * - repeats of the same character are counted, so "\d\d\d" becomes "\d{3}" and "aa*" becomes "a+",
+ * - a quantifier of one occurrence is dropped, and the others are written in their shortest form,
+ * - nested quantifiers are merged, so "(?:a+)*" becomes "a*",
+ * - a non-capturing group around a single atom, or not quantified at all, is dropped,
+ * - a character class of one character becomes that character, and one that equals \d, \s or \w (or their negations) the shorthand.
+ * Capturing groups are never added, removed or reordered, so group indexes and back references remain valid,
+ * and a quantifier on a capturing group is left as it is, because the JDK reports the groups of a loop differently per kind of loop.
+ * A rewrite that does not make the expression shorter is not done.
+ */
+final class Optimizer {
+
+    private Optimizer() {
+    }
+
+    static List<Node> optimize(List<Node> nodes) {
+        return sequence(nodes);
+    }
+
+    // -------------------------
+    // NODES
+
+    private static Node optimize(Node node) {
+        if (node instanceof Node.Sequence sequence) {
+            return Node.of(sequence(sequence.nodes()));
+        }
+        if (node instanceof Node.CharClass charClass) {
+            return charClass(charClass.set());
+        }
+        if (node instanceof Node.Group group) {
+            return new Node.Group(group.name(), Node.of(elements(group.content())));
+        }
+        if (node instanceof Node.NonCapturingGroup group) {
+            if (group.content() instanceof Node.Alternation alternation) {
+                return new Node.NonCapturingGroup(group.atomic(), optimize(alternation));
+            }
+            List<Node> content = elements(group.content());
+            if (content.size() == 1 && content.get(0) instanceof Node.NonCapturingGroup inner && !inner.atomic()) {
+                return new Node.NonCapturingGroup(group.atomic(), inner.content());
+            }
+            // an alternation directly in the group would no longer capture
+            return new Node.NonCapturingGroup(group.atomic(), content.size() == 1 && content.get(0) instanceof Node.Alternation ? new Node.Sequence(content) : Node.of(content));
+        }
+        if (node instanceof Node.Alternation alternation) {
+            if (alternation.literals() != null) {
+                return alternation; // rendered with common prefixes factored out, which the rewrites would prevent
+            }
+            List<Node> alternatives = new ArrayList<>(alternation.alternatives().size());
+            for (Node alternative : alternation.alternatives()) {
+                alternatives.add(Node.of(elements(alternative)));
+            }
+            // alternatives that became literal texts are rendered with their common prefixes factored out, which is not always shorter
+            Node.Alternation optimized = new Node.Alternation(List.copyOf(alternatives));
+            return Node.render(List.of(optimized)).length() <= Node.render(List.of(alternation)).length() ? optimized : alternation;
+        }
+        if (node instanceof Node.Quantifier quantifier) {
+            return quantifier(quantifier);
+        }
+        return node;
+    }
+
+    /**
+     * The optimized nodes that a node in a sequence contributes, a group that neither captures nor is quantified contributes its content.
+     */
+    private static List<Node> elements(Node node) {
+        if (node instanceof Node.Sequence sequence) {
+            return sequence(sequence.nodes());
+        }
+        if (node instanceof Node.NonCapturingGroup group && !group.atomic()) {
+            // an alternation directly in the group does not capture, on its own it would
+            return group.content() instanceof Node.Alternation ? List.of(optimize(group)) : elements(group.content());
+        }
+        if (node instanceof Node.Literal literal && literal.text().isEmpty()) {
+            return List.of();
+        }
+        return List.of(optimize(node));
+    }
+
+    private static List<Node> sequence(List<Node> nodes) {
+        // a quantifier without an atom applies to whatever is rendered before it, so the nodes must stay as they are
+        if (hasDangling(nodes)) {
+            return nodes.stream().map(Optimizer::optimize).toList();
+        }
+
+        // one node per character, so repeats can be counted
+        List<Node> elements = new ArrayList<>();
+        for (Node node : nodes) {
+            for (Node element : elements(node)) {
+                if (element instanceof Node.Literal literal) {
+                    literal.text().codePoints().forEach(c -> elements.add(new Node.Literal(Character.toString(c))));
+                }
+                else {
+                    elements.add(element);
+                }
+            }
+        }
+
+        List<Node> result = new ArrayList<>(elements.size());
+        for (int i = 0; i < elements.size(); ) {
+            int end = endOfRun(elements, i);
+            result.addAll(countRun(elements.subList(i, end)));
+            i = end;
+        }
+        return mergeLiterals(result);
+    }
+
+    private static Node quantifier(Node.Quantifier quantifier) {
+        // a quantifier directly on a quantifier, like "a{1}{2}", is interpreted by the engine in its own way, so leave it be
+        if (isDangling(quantifier) || quantifier.atom() instanceof Node.Quantifier) {
+            return quantifier;
+        }
+        Node atom = optimize(quantifier.atom());
+        // a loop around a capturing group is left as it is, see above
+        if (hasGroup(atom)) {
+            return new Node.Quantifier(atom, quantifier.kind(), quantifier.min(), quantifier.max(), quantifier.mode());
+        }
+        if (atom instanceof Node.NonCapturingGroup group && !group.atomic()) {
+            List<Node> content = elements(group.content());
+            if (content.size() == 1 && isAtom(content.get(0))) {
+                atom = content.get(0);
+            }
+            // nested quantifiers, like (?:a+)*
+            else if (content.size() == 1 && content.get(0) instanceof Node.Quantifier inner
+                    && !(inner.atom() instanceof Node.Quantifier) && !isDangling(inner)
+                    && quantifier.mode() == Node.Quantifier.Mode.GREEDY && inner.mode() == Node.Quantifier.Mode.GREEDY) {
+                Node merged = merge(inner, quantifier);
+                if (merged != null) {
+                    return merged;
+                }
+            }
+        }
+        if (quantifier.min() == 1 && quantifier.max() == 1
+                && (quantifier.mode() != Node.Quantifier.Mode.POSSESSIVE || isChar(atom))) {
+            return atom;
+        }
+        return quantifier(atom, quantifier.min(), quantifier.max(), quantifier.mode());
+    }
+
+    /**
+     * Merge a quantifier on a quantifier, if the result matches the same.
+     * @return null if they cannot be merged
+     */
+    private static Node merge(Node.Quantifier inner, Node.Quantifier outer) {
+        if (isSimple(inner) && isSimple(outer)) {
+            int min = inner.min() * outer.min();
+            int max = inner.max() == 1 && outer.max() == 1 ? 1 : -1;
+            return quantifier(inner.atom(), min, max, Node.Quantifier.Mode.GREEDY);
+        }
+        if (inner.kind() == Node.Quantifier.Kind.EXACTLY && outer.kind() == Node.Quantifier.Kind.EXACTLY) {
+            long times = (long) inner.min() * outer.min();
+            return times > Integer.MAX_VALUE ? null : quantifier(inner.atom(), (int) times, (int) times, Node.Quantifier.Mode.GREEDY);
+        }
+        return null;
+    }
+
+    /**
+     * @return true for ?, * and +
+     */
+    private static boolean isSimple(Node.Quantifier quantifier) {
+        return quantifier.min() <= 1 && (quantifier.max() == 1 || quantifier.max() < 0) && !(quantifier.min() == 1 && quantifier.max() == 1);
+    }
+
+    /**
+     * @return the quantifier in its shortest notation
+     */
+    private static Node quantifier(Node atom, int min, int max, Node.Quantifier.Mode mode) {
+        if (min == 1 && max == 1 && mode != Node.Quantifier.Mode.POSSESSIVE) {
+            return atom;
+        }
+        Node.Quantifier.Kind kind;
+        if (min == 0 && max == 1) {
+            kind = Node.Quantifier.Kind.OPTIONAL;
+        }
+        else if (min == 0 && max < 0) {
+            kind = Node.Quantifier.Kind.ZERO_OR_MORE;
+        }
+        else if (min == 1 && max < 0) {
+            kind = Node.Quantifier.Kind.ONE_OR_MORE;
+        }
+        else if (max < 0) {
+            kind = Node.Quantifier.Kind.AT_LEAST;
+        }
+        else if (min == max) {
+            kind = Node.Quantifier.Kind.EXACTLY;
+        }
+        else {
+            kind = Node.Quantifier.Kind.BETWEEN;
+        }
+        return new Node.Quantifier(atom, kind, min, max, mode);
+    }
+
+    private static Node charClass(CharSet set) {
+        int[] ranges = set.ranges();
+        if (ranges.length == 2 && ranges[0] == ranges[1]) {
+            return new Node.Literal(Character.toString(ranges[0]));
+        }
+        if (set.equals(CharSet.digit())) {
+            return new Node.Shorthand("\\d");
+        }
+        if (set.equals(CharSet.digit().negate())) {
+            return new Node.Shorthand("\\D");
+        }
+        if (set.equals(CharSet.whitespace())) {
+            return new Node.Shorthand("\\s");
+        }
+        if (set.equals(CharSet.whitespace().negate())) {
+            return new Node.Shorthand("\\S");
+        }
+        if (set.equals(CharSet.word())) {
+            return new Node.Shorthand("\\w");
+        }
+        if (set.equals(CharSet.word().negate())) {
+            return new Node.Shorthand("\\W");
+        }
+        return new Node.CharClass(set);
+    }
+
+    // -------------------------
+    // RUNS
+
+    /**
+     * @return the end of the run of greedy repeats of the same character that starts at the index
+     */
+    private static int endOfRun(List<Node> elements, int start) {
+        Node atom = countedAtom(elements.get(start));
+        if (atom == null) {
+            return start + 1;
+        }
+        int end = start + 1;
+        while (end < elements.size() && atom.equals(countedAtom(elements.get(end)))) {
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * Repeats of the same character can be counted as one quantifier, since without groups only the total number of repeats matters.
+     * So "aa*" is "a+" and "\d{2}\d?" is "\d{2,3}".
+     */
+    private static List<Node> countRun(List<Node> run) {
+        if (run.size() == 1) {
+            return run;
+        }
+        int min = 0;
+        int max = 0;
+        for (Node node : run) {
+            Node.Quantifier quantifier = node instanceof Node.Quantifier q ? q : null;
+            int nodeMin = quantifier == null ? 1 : quantifier.min();
+            int nodeMax = quantifier == null ? 1 : quantifier.max();
+            min = (int) Math.min((long) min + nodeMin, Integer.MAX_VALUE);
+            max = max < 0 || nodeMax < 0 ? -1 : (int) Math.min((long) max + nodeMax, Integer.MAX_VALUE);
+        }
+        Node counted = quantifier(countedAtom(run.get(0)), min, max, Node.Quantifier.Mode.GREEDY);
+        return Node.render(List.of(counted)).length() < Node.render(run).length() ? List.of(counted) : run;
+    }
+
+    /**
+     * @return the character that the node matches a number of times greedily, or null
+     */
+    private static Node countedAtom(Node node) {
+        if (isChar(node)) {
+            return node;
+        }
+        if (node instanceof Node.Quantifier quantifier && quantifier.mode() == Node.Quantifier.Mode.GREEDY && isChar(quantifier.atom())) {
+            return quantifier.atom();
+        }
+        return null;
+    }
+
+    private static List<Node> mergeLiterals(List<Node> nodes) {
+        List<Node> result = new ArrayList<>(nodes.size());
+        StringBuilder text = new StringBuilder();
+        for (Node node : nodes) {
+            if (node instanceof Node.Literal literal) {
+                text.append(literal.text());
+                continue;
+            }
+            if (!text.isEmpty()) {
+                result.add(new Node.Literal(text.toString()));
+                text.setLength(0);
+            }
+            result.add(node);
+        }
+        if (!text.isEmpty()) {
+            result.add(new Node.Literal(text.toString()));
+        }
+        return result;
+    }
+
+    // -------------------------
+    // SUPPORT
+
+    private static boolean hasDangling(List<Node> nodes) {
+        return nodes.stream().anyMatch(node -> isDangling(node) || (node instanceof Node.Sequence sequence && hasDangling(sequence.nodes())));
+    }
+
+    private static boolean isDangling(Node node) {
+        return node instanceof Node.Quantifier quantifier && Node.isEmpty(quantifier.atom());
+    }
+
+    /**
+     * @return true if the node matches exactly one character
+     */
+    private static boolean isChar(Node node) {
+        if (node instanceof Node.Literal literal) {
+            return !literal.text().isEmpty() && literal.text().codePointCount(0, literal.text().length()) == 1;
+        }
+        return node instanceof Node.Shorthand || node instanceof Node.CharClass;
+    }
+
+    /**
+     * @return true if a quantifier can be applied to the node as it is rendered
+     */
+    private static boolean isAtom(Node node) {
+        return isChar(node)
+                || node instanceof Node.Group
+                || node instanceof Node.NonCapturingGroup
+                || node instanceof Node.BackReference;
+    }
+
+    private static boolean hasGroup(Node node) {
+        if (node instanceof Node.Group || node instanceof Node.Alternation) {
+            return true;
+        }
+        if (node instanceof Node.NonCapturingGroup group) {
+            return hasGroup(group.content());
+        }
+        if (node instanceof Node.Quantifier quantifier) {
+            return hasGroup(quantifier.atom());
+        }
+        if (node instanceof Node.Sequence sequence) {
+            return sequence.nodes().stream().anyMatch(Optimizer::hasGroup);
+        }
+        return false;
+    }
+}
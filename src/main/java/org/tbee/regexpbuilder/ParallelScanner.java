@@ -0,0 +1,264 @@
+package org.tbee.regexpbuilder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntFunction;
+import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
+import java.util.stream.Stream;
+
+/**
+ * Scans a large input on all cores: the input is split into chunks at record boundaries (the end of a delimiter match),
+ * and the chunks are matched on the ForkJoinPool, each with its own matcher.
+ * Matches are assumed not to cross a delimiter, so every match lies within one chunk.
+ */
+final class ParallelScanner {
+
+    private static final int CHUNKS_PER_WORKER = 4; // more chunks than workers, so a worker that finishes early can steal work
+    private static final long MAX_FILE_CHUNK = 1L << 26;
+
+    private ParallelScanner() {
+    }
+
+    static Stream<MatchResult> scan(CompiledRegExp compiled, CharSequence text, CompiledRegExp delimiter, boolean ordered) {
+        int chunks = ForkJoinPool.commonPool().getParallelism() * CHUNKS_PER_WORKER;
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        Matcher delimiterMatcher = delimiter.matcher(text);
+        for (int i = 1; i < chunks; i++) {
+            long tentative = (long) text.length() * i / chunks;
+            if (tentative <= bounds.get(bounds.size() - 1)) {
+                continue;
+            }
+            long bound = delimiterMatcher.find((int) tentative) ? delimiterMatcher.end() : text.length();
+            if (bound >= text.length()) {
+                break;
+            }
+            if (bound > bounds.get(bounds.size() - 1)) {
+                bounds.add(bound);
+            }
+        }
+        bounds.add((long) text.length());
+
+        return run(bounds.size() - 1, ordered, chunk -> {
+            Matcher matcher = compiled.matcher(text);
+            matcher.useTransparentBounds(true);
+            matcher.useAnchoringBounds(false);
+            matcher.region(bounds.get(chunk).intValue(), bounds.get(chunk + 1).intValue());
+            List<MatchResult> results = new ArrayList<>();
+            while (matcher.find()) {
+                // toMatchResult would copy the whole text for each match if it is not a String, only copy the groups
+                results.add(new StreamMatchResult(matcher, 0));
+            }
+            return results;
+        });
+    }
+
+    /**
+     * @param path UTF-8 (or ASCII) encoded text; the positions of the results are in bytes
+     */
+    static Stream<MatchResult> scan(CompiledRegExp compiled, Path path, CompiledRegExp delimiter, boolean ordered) throws IOException {
+        if (!delimiter.isAsciiOnly()) {
+            throw new IllegalArgumentException("The delimiter " + delimiter + " must only match ASCII characters");
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long chunks = Math.max(ForkJoinPool.commonPool().getParallelism() * CHUNKS_PER_WORKER, (size + MAX_FILE_CHUNK - 1) / MAX_FILE_CHUNK);
+            List<Long> bounds = new ArrayList<>();
+            bounds.add(0L);
+            for (long i = 1; i < chunks; i++) {
+                long tentative = size * i / chunks;
+                if (tentative <= bounds.get(bounds.size() - 1)) {
+                    continue;
+                }
+                long bound = findDelimiterEnd(channel, size, tentative, delimiter);
+                if (bound >= size) {
+                    break;
+                }
+                if (bound > bounds.get(bounds.size() - 1)) {
+                    bounds.add(bound);
+                }
+            }
+            bounds.add(size);
+
+            return run(bounds.size() - 1, ordered, chunk -> {
+                try {
+                    long start = bounds.get(chunk);
+                    long length = bounds.get(chunk + 1) - start;
+                    if (length > Integer.MAX_VALUE) {
+                        throw recordTooLarge(start);
+                    }
+                    ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+                    return compiled.isAsciiOnly() ? matchBytes(compiled, bytes, start) : matchDecoded(compiled, bytes, start);
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    private static long findDelimiterEnd(FileChannel channel, long size, long from, CompiledRegExp delimiter) throws IOException {
+        long windowSize = 1 << 16;
+        while (true) {
+            long length = Math.min(Math.min(windowSize, Integer.MAX_VALUE), size - from);
+            Matcher matcher = delimiter.matcher(channel.map(FileChannel.MapMode.READ_ONLY, from, length));
+            // if the delimiter could continue beyond the window, look again in a larger one
+            if (matcher.find() && (!matcher.hitEnd() || from + length == size)) {
+                return from + matcher.end();
+            }
+            if (from + length == size) {
+                return size;
+            }
+            if (length == Integer.MAX_VALUE) {
+                throw recordTooLarge(from);
+            }
+            windowSize *= 2;
+        }
+    }
+
+    private static IllegalStateException recordTooLarge(long start) {
+        return new IllegalStateException("The record at " + start + " is too large, no delimiter found within " + Integer.MAX_VALUE + " bytes");
+    }
+
+    private static List<MatchResult> matchBytes(CompiledRegExp compiled, ByteBuffer bytes, long start) {
+        Matcher matcher = compiled.matcher(new ByteCharSequence(bytes));
+        List<MatchResult> results = new ArrayList<>();
+        while (matcher.find()) {
+            results.add(new StreamMatchResult(matcher, start));
+        }
+        return results;
+    }
+
+    /**
+     * Decode the chunk, and convert the char offsets of the matches back into byte offsets.
+     */
+    private static List<MatchResult> matchDecoded(CompiledRegExp compiled, ByteBuffer bytes, long start) {
+        CharBuffer chars = StandardCharsets.UTF_8.decode(bytes);
+        Matcher matcher = compiled.matcher(chars);
+        Utf8Offsets offsets = new Utf8Offsets(chars);
+        List<MatchResult> results = new ArrayList<>();
+        while (matcher.find()) {
+            int groupCount = matcher.groupCount();
+            int[] charPositions = new int[2 * (groupCount + 1)];
+            String[] groups = new String[groupCount + 1];
+            for (int group = 0; group <= groupCount; group++) {
+                charPositions[2 * group] = matcher.start(group);
+                charPositions[2 * group + 1] = matcher.end(group);
+                groups[group] = matcher.group(group);
+            }
+            results.add(new StreamMatchResult(offsets.byteOffsets(charPositions, start), groups));
+        }
+        return results;
+    }
+
+    private static Stream<MatchResult> run(int chunks, boolean ordered, IntFunction<List<MatchResult>> matchChunk) {
+        if (ordered) {
+            return ForkJoinPool.commonPool().invoke(new ChunkTask(0, chunks, matchChunk, null)).stream();
+        }
+        Queue<MatchResult> results = new ConcurrentLinkedQueue<>();
+        ForkJoinPool.commonPool().invoke(new ChunkTask(0, chunks, matchChunk, results));
+        return results.stream();
+    }
+
+    /**
+     * Matches the chunks from..to, splitting in halves until a single chunk remains.
+     * Ordered, the results of the halves are concatenated; unordered, they are added to a shared queue as soon as they are found.
+     */
+    private static final class ChunkTask extends RecursiveTask<List<MatchResult>> {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final IntFunction<List<MatchResult>> matchChunk;
+        private final Queue<MatchResult> unordered;
+
+        ChunkTask(int from, int to, IntFunction<List<MatchResult>> matchChunk, Queue<MatchResult> unordered) {
+            this.from = from;
+            this.to = to;
+            this.matchChunk = matchChunk;
+            this.unordered = unordered;
+        }
+
+        protected List<MatchResult> compute() {
+            if (to - from == 1) {
+                List<MatchResult> results = matchChunk.apply(from);
+                if (unordered != null) {
+                    unordered.addAll(results);
+                    return null;
+                }
+                return results;
+            }
+            int middle = (from + to) >>> 1;
+            ChunkTask second = new ChunkTask(middle, to, matchChunk, unordered);
+            second.fork();
+            List<MatchResult> results = new ChunkTask(from, middle, matchChunk, unordered).compute();
+            List<MatchResult> secondResults = second.join();
+            if (unordered != null) {
+                return null;
+            }
+            results.addAll(secondResults);
+            return results;
+        }
+    }
+
+    /**
+     * Converts char offsets into UTF-8 byte offsets, by counting the bytes of the chars between the previous offset and the next.
+     * The offsets of a match are converted in increasing order, so every char of the chunk is counted about once.
+     */
+    private static final class Utf8Offsets {
+        private final CharSequence chars;
+        private int charOffset = 0;
+        private long byteOffset = 0;
+
+        Utf8Offsets(CharSequence chars) {
+            this.chars = chars;
+        }
+
+        /**
+         * @return the byte offsets plus start, in the same order as the char offsets, -1 stays -1
+         */
+        long[] byteOffsets(int[] charOffsets, long start) {
+            // sort the offsets together with their index, packed in a long
+            long[] sorted = new long[charOffsets.length];
+            for (int i = 0; i < charOffsets.length; i++) {
+                sorted[i] = (long) charOffsets[i] << 32 | i;
+            }
+            Arrays.sort(sorted);
+            long[] byteOffsets = new long[charOffsets.length];
+            for (long entry : sorted) {
+                int index = (int) entry;
+                byteOffsets[index] = charOffsets[index] < 0 ? -1 : start + byteOffset(charOffsets[index]);
+            }
+            return byteOffsets;
+        }
+
+        private long byteOffset(int offset) {
+            for (; charOffset < offset; charOffset++) {
+                byteOffset += utf8Length(chars.charAt(charOffset));
+            }
+            // the groups lie within their match, so going back is rare and never far
+            for (; charOffset > offset; charOffset--) {
+                byteOffset -= utf8Length(chars.charAt(charOffset - 1));
+            }
+            return byteOffset;
+        }
+
+        private static int utf8Length(char c) {
+            return c < 0x80 ? 1 : c < 0x800 ? 2 : Character.isSurrogate(c) ? 2 : 3;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package org.tbee.regexpbuilder;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a static final RegExp constant to be evaluated at compile time by the PrecompiledProcessor.
+ * For a class LogPatterns the processor generates a class LogPatternsPrecompiled, with per annotated field a nested class holding
+ * the regular expression, the indexes of its named groups, and a Pattern that is compiled on first use:
+ *
+ * <pre>{@code
+ * public class LogPatterns {
+ *     @Precompiled
+ *     static final RegExp DATE = RegExp.of().group("year", occurs(4, digit())).text("-").group("month", occurs(2, digit()));
+ * }
+ *
+ * Matcher matcher = LogPatternsPrecompiled.DATE.PATTERN.matcher(text);
+ * if (matcher.matches()) {
+ *     String year = matcher.group(LogPatternsPrecompiled.DATE.GROUP_YEAR);
+ * }
+ * }</pre>
+ *
+ * The initializer may only use the builder methods of RegExp and RE, with literals, constants and other RegExp constants as arguments.
+ * The processor is picked up automatically when the library is on the compile classpath of a javac build.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.FIELD)
+public @interface Precompiled {
+}
@@ -0,0 +1,374 @@
+package org.tbee.regexpbuilder;
+
+import com.sun.source.tree.BinaryTree;
+import com.sun.source.tree.LiteralTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.tree.MethodInvocationTree;
+import com.sun.source.tree.ParenthesizedTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.UnaryTree;
+import com.sun.source.tree.VariableTree;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.Trees;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Evaluates the initializers of @Precompiled RegExp constants at compile time, and generates their pattern strings and group indexes, see Precompiled.
+ * The initializer is not executed as Java code: its syntax tree is interpreted, calling only the builder methods of this library through reflection.
+ * This requires javac, because the syntax tree is read through its Trees API.
+ */
+@SupportedAnnotationTypes("org.tbee.regexpbuilder.Precompiled")
+public final class PrecompiledProcessor extends AbstractProcessor {
+
+    private static final String SUFFIX = "Precompiled";
+
+    private Trees trees;
+    private final Map<VariableElement, RegExp> evaluated = new LinkedHashMap<>();
+    private final Set<VariableElement> evaluating = new HashSet<>();
+
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        try {
+            trees = Trees.instance(processingEnv);
+        }
+        catch (IllegalArgumentException e) {
+            trees = null; // not javac
+        }
+    }
+
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Map<TypeElement, List<VariableElement>> fieldsPerType = new LinkedHashMap<>();
+        for (Element element : roundEnv.getElementsAnnotatedWith(Precompiled.class)) {
+            VariableElement field = (VariableElement) element;
+            if (!field.getModifiers().contains(Modifier.STATIC) || !field.getModifiers().contains(Modifier.FINAL) || !isRegExp(field.asType())) {
+                error(field, "@Precompiled requires a static final RegExp field");
+                continue;
+            }
+            if (trees == null) {
+                error(field, "@Precompiled requires the javac compiler");
+                continue;
+            }
+            fieldsPerType.computeIfAbsent((TypeElement) field.getEnclosingElement(), type -> new ArrayList<>()).add(field);
+        }
+
+        for (Map.Entry<TypeElement, List<VariableElement>> entry : fieldsPerType.entrySet()) {
+            Map<VariableElement, CompiledRegExp> compiledRegExps = new LinkedHashMap<>();
+            for (VariableElement field : entry.getValue()) {
+                try {
+                    compiledRegExps.put(field, evaluate(field).compile());
+                }
+                catch (RuntimeException e) {
+                    error(field, "@Precompiled " + field.getSimpleName() + " cannot be evaluated at compile time: " + e.getMessage());
+                }
+            }
+            if (compiledRegExps.size() == entry.getValue().size()) {
+                generate(entry.getKey(), compiledRegExps);
+            }
+        }
+        return true;
+    }
+
+    // -------------------------
+    // EVALUATE
+
+    private RegExp evaluate(VariableElement field) {
+        RegExp regExp = evaluated.get(field);
+        if (regExp != null) {
+            return regExp;
+        }
+        if (!evaluating.add(field)) {
+            throw new IllegalStateException("'" + field.getSimpleName() + "' refers to itself");
+        }
+        try {
+            TreePath path = trees.getPath(field);
+            if (path == null || ((VariableTree) path.getLeaf()).getInitializer() == null) {
+                throw new IllegalStateException("'" + field.getSimpleName() + "' has no initializer in the sources being compiled");
+            }
+            Object value = evaluate(new TreePath(path, ((VariableTree) path.getLeaf()).getInitializer()));
+            if (!(value instanceof RegExp)) {
+                throw new IllegalStateException("'" + field.getSimpleName() + "' does not evaluate to a RegExp");
+            }
+            evaluated.put(field, (RegExp) value);
+            return (RegExp) value;
+        }
+        finally {
+            evaluating.remove(field);
+        }
+    }
+
+    private Object evaluate(TreePath path) {
+        Tree tree = path.getLeaf();
+        switch (tree.getKind()) {
+            case STRING_LITERAL, INT_LITERAL, LONG_LITERAL, CHAR_LITERAL, BOOLEAN_LITERAL:
+                return ((LiteralTree) tree).getValue();
+            case PARENTHESIZED:
+                return evaluate(new TreePath(path, ((ParenthesizedTree) tree).getExpression()));
+            case UNARY_MINUS:
+                Object operand = evaluate(new TreePath(path, ((UnaryTree) tree).getExpression()));
+                if (operand instanceof Integer i) {
+                    return -i;
+                }
+                if (operand instanceof Long l) {
+                    return -l;
+                }
+                break;
+            case PLUS:
+                BinaryTree binary = (BinaryTree) tree;
+                Object left = evaluate(new TreePath(path, binary.getLeftOperand()));
+                Object right = evaluate(new TreePath(path, binary.getRightOperand()));
+                if (left instanceof String || right instanceof String) {
+                    return String.valueOf(left) + right;
+                }
+                if (left instanceof Integer l && right instanceof Integer r) {
+                    return l + r;
+                }
+                break;
+            case IDENTIFIER, MEMBER_SELECT:
+                return evaluateVariable(path);
+            case METHOD_INVOCATION:
+                return invoke(path);
+            default:
+                break;
+        }
+        throw new IllegalStateException("'" + tree + "' is not supported");
+    }
+
+    private Object evaluateVariable(TreePath path) {
+        Element element = trees.getElement(path);
+        if (element instanceof VariableElement variable) {
+            if (variable.getConstantValue() != null) {
+                return variable.getConstantValue();
+            }
+            if (variable.getKind() == ElementKind.ENUM_CONSTANT) {
+                return enumConstant(variable);
+            }
+            if (variable.getModifiers().contains(Modifier.STATIC) && variable.getModifiers().contains(Modifier.FINAL) && isRegExp(variable.asType())) {
+                return evaluate(variable);
+            }
+        }
+        throw new IllegalStateException("'" + path.getLeaf() + "' is not a constant");
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Object enumConstant(VariableElement variable) {
+        try {
+            return Enum.valueOf((Class<Enum>) loadClass((TypeElement) variable.getEnclosingElement()), variable.getSimpleName().toString());
+        }
+        catch (ClassNotFoundException e) {
+            throw new IllegalStateException("'" + variable + "' cannot be loaded", e);
+        }
+    }
+
+    /**
+     * Only the methods of this library are called, resolved to the overload that javac selected.
+     */
+    private Object invoke(TreePath path) {
+        MethodInvocationTree invocation = (MethodInvocationTree) path.getLeaf();
+        Element element = trees.getElement(new TreePath(path, invocation.getMethodSelect()));
+        if (!(element instanceof ExecutableElement method)
+                || !processingEnv.getElementUtils().getPackageOf(method).getQualifiedName().contentEquals(RegExp.class.getPackageName())) {
+            throw new IllegalStateException("'" + invocation + "' is not a method of the RegExp builder");
+        }
+
+        Object target = null;
+        if (!method.getModifiers().contains(Modifier.STATIC)) {
+            if (!(invocation.getMethodSelect() instanceof MemberSelectTree select)) {
+                throw new IllegalStateException("'" + invocation + "' is not supported");
+            }
+            target = evaluate(new TreePath(path, select.getExpression()));
+        }
+        Object[] args = new Object[invocation.getArguments().size()];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = evaluate(new TreePath(path, invocation.getArguments().get(i)));
+        }
+
+        try {
+            Class<?>[] parameterTypes = new Class<?>[method.getParameters().size()];
+            for (int i = 0; i < parameterTypes.length; i++) {
+                parameterTypes[i] = toClass(method.getParameters().get(i).asType());
+            }
+            Method reflected = loadClass((TypeElement) method.getEnclosingElement()).getMethod(method.getSimpleName().toString(), parameterTypes);
+            return reflected.invoke(target, method.isVarArgs() ? varargs(parameterTypes, args) : args);
+        }
+        catch (InvocationTargetException e) {
+            throw new IllegalStateException("'" + invocation + "' failed: " + e.getCause().getMessage(), e.getCause());
+        }
+        catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("'" + invocation + "' cannot be called", e);
+        }
+    }
+
+    /**
+     * Collect the trailing arguments into an array, unless javac passed them as an array already.
+     */
+    private static Object[] varargs(Class<?>[] parameterTypes, Object[] args) {
+        int fixed = parameterTypes.length - 1;
+        Class<?> arrayType = parameterTypes[fixed];
+        if (args.length == parameterTypes.length && (args[fixed] == null || arrayType.isInstance(args[fixed]))) {
+            return args;
+        }
+        Object array = Array.newInstance(arrayType.getComponentType(), args.length - fixed);
+        for (int i = fixed; i < args.length; i++) {
+            Array.set(array, i - fixed, args[i]);
+        }
+        Object[] result = new Object[parameterTypes.length];
+        System.arraycopy(args, 0, result, 0, fixed);
+        result[fixed] = array;
+        return result;
+    }
+
+    private Class<?> toClass(TypeMirror type) throws ClassNotFoundException {
+        TypeMirror erased = processingEnv.getTypeUtils().erasure(type);
+        return switch (erased.getKind()) {
+            case BOOLEAN -> boolean.class;
+            case BYTE -> byte.class;
+            case SHORT -> short.class;
+            case INT -> int.class;
+            case LONG -> long.class;
+            case CHAR -> char.class;
+            case FLOAT -> float.class;
+            case DOUBLE -> double.class;
+            case ARRAY -> toClass(((ArrayType) erased).getComponentType()).arrayType();
+            case DECLARED -> loadClass((TypeElement) ((DeclaredType) erased).asElement());
+            default -> throw new ClassNotFoundException(erased.toString());
+        };
+    }
+
+    private Class<?> loadClass(TypeElement type) throws ClassNotFoundException {
+        return Class.forName(processingEnv.getElementUtils().getBinaryName(type).toString(), true, getClass().getClassLoader());
+    }
+
+    private boolean isRegExp(TypeMirror type) {
+        return processingEnv.getTypeUtils().erasure(type).toString().equals(RegExp.class.getName());
+    }
+
+    // -------------------------
+    // GENERATE
+
+    private void generate(TypeElement type, Map<VariableElement, CompiledRegExp> compiledRegExps) {
+        String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        String className = generatedName(type);
+        String qualifiedName = packageName.isEmpty() ? className : packageName + "." + className;
+        try (Writer writer = processingEnv.getFiler().createSourceFile(qualifiedName, type).openWriter()) {
+            StringBuilder sb = new StringBuilder();
+            if (!packageName.isEmpty()) {
+                sb.append("package ").append(packageName).append(";\n\n");
+            }
+            sb.append("/**\n");
+            sb.append(" * The @Precompiled fields of ").append(type.getQualifiedName()).append(".\n");
+            sb.append(" */\n");
+            sb.append("@javax.annotation.processing.Generated(\"").append(getClass().getName()).append("\")\n");
+            sb.append("public final class ").append(className).append(" {\n\n");
+            sb.append("    private ").append(className).append("() {\n");
+            sb.append("    }\n");
+            for (Map.Entry<VariableElement, CompiledRegExp> entry : compiledRegExps.entrySet()) {
+                String name = entry.getKey().getSimpleName().toString();
+                CompiledRegExp compiledRegExp = entry.getValue();
+                sb.append("\n");
+                sb.append("    /**\n");
+                sb.append("     * ").append(type.getSimpleName()).append(".").append(name).append(", the pattern is compiled on first use.\n");
+                sb.append("     */\n");
+                sb.append("    public static final class ").append(name).append(" {\n");
+                sb.append("        public static final String REGEX = ");
+                appendLiteral(compiledRegExp.toString(), sb);
+                sb.append(";\n");
+                for (int slot = 0; slot < compiledRegExp.slotCount(); slot++) {
+                    sb.append("        public static final int GROUP_").append(constantName(compiledRegExp.groupName(slot)))
+                            .append(" = ").append(compiledRegExp.groupIndex(slot)).append(";\n");
+                }
+                sb.append("        public static final java.util.regex.Pattern PATTERN = java.util.regex.Pattern.compile(REGEX);\n\n");
+                sb.append("        private ").append(name).append("() {\n");
+                sb.append("        }\n");
+                sb.append("    }\n");
+            }
+            sb.append("}\n");
+            writer.write(sb.toString());
+        }
+        catch (IOException e) {
+            error(type, "Cannot generate " + qualifiedName + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * A nested class Outer.Inner results in OuterInnerPrecompiled.
+     */
+    private static String generatedName(TypeElement type) {
+        StringBuilder sb = new StringBuilder();
+        for (Element element = type; element instanceof TypeElement; element = element.getEnclosingElement()) {
+            sb.insert(0, element.getSimpleName());
+        }
+        return sb.append(SUFFIX).toString();
+    }
+
+    /**
+     * "dateTime" becomes "DATE_TIME"
+     */
+    private static String constantName(String groupName) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < groupName.length(); i++) {
+            char c = groupName.charAt(i);
+            if (Character.isUpperCase(c) && i > 0 && !Character.isUpperCase(groupName.charAt(i - 1))) {
+                sb.append('_');
+            }
+            sb.append(Character.isJavaIdentifierPart(c) ? Character.toUpperCase(c) : '_');
+        }
+        return sb.toString();
+    }
+
+    private static void appendLiteral(String s, StringBuilder sb) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20 || c > 0x7E) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    }
+                    else {
+                        sb.append(c);
+                    }
+                }
+            }
+        }
+        sb.append('"');
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}
@@ -0,0 +1,179 @@
+package org.tbee.regexpbuilder;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+
+/**
+ * Uses the literal texts that any match must contain to skip input that cannot match, before the regular expression engine is used.
+ * - If every match starts with a literal prefix, only the positions where that prefix occurs are tried.
+ * - Otherwise, if every match contains a literal, input without that literal is rejected immediately.
+ */
+final class Prefilter {
+
+    static final Prefilter NONE = new Prefilter(null, null);
+
+    private final String prefix;
+    private final String required;
+    private final int[] skip; // Boyer-Moore-Horspool shifts for the literal, indexed by the low byte of a character
+
+    private Prefilter(String prefix, String required) {
+        this.prefix = prefix;
+        this.required = required;
+        String literal = prefix != null ? prefix : required;
+        if (literal == null) {
+            skip = null;
+        }
+        else {
+            skip = new int[256];
+            Arrays.fill(skip, literal.length());
+            for (int i = 0; i < literal.length() - 1; i++) {
+                skip[literal.charAt(i) & 0xFF] = literal.length() - 1 - i;
+            }
+        }
+    }
+
+    static Prefilter of(List<Node> nodes) {
+        Literals literals = new Literals();
+        if (!literals.collect(nodes)) {
+            return NONE;
+        }
+        literals.endRun();
+        if (literals.prefix != null && !literals.prefix.isEmpty()) {
+            return new Prefilter(literals.prefix, null);
+        }
+        if (literals.longest != null && !literals.longest.isEmpty()) {
+            return new Prefilter(null, literals.longest);
+        }
+        return NONE;
+    }
+
+    /**
+     * @return the literal every match starts with, or null
+     */
+    String prefix() {
+        return prefix;
+    }
+
+    /**
+     * @return a literal every match contains, or null (also when there is a prefix)
+     */
+    String required() {
+        return required;
+    }
+
+    /**
+     * The same as matcher.find(from), but skipping the input that cannot match.
+     * @param matcher a matcher that was reset to the text
+     */
+    boolean find(Matcher matcher, CharSequence text, int from) {
+        if (prefix != null) {
+            matcher.useTransparentBounds(true);
+            matcher.useAnchoringBounds(false);
+            while (true) {
+                int idx = indexOf(text, prefix, from);
+                if (idx < 0) {
+                    return false;
+                }
+                matcher.region(idx, text.length());
+                if (matcher.lookingAt()) {
+                    return true;
+                }
+                from = idx + 1;
+            }
+        }
+        if (required != null && indexOf(text, required, from) < 0) {
+            return false;
+        }
+        return matcher.find(from);
+    }
+
+    int indexOf(CharSequence text, String literal, int from) {
+        if (text instanceof String s) {
+            return s.indexOf(literal, from);
+        }
+
+        // Boyer-Moore-Horspool
+        int last = literal.length() - 1;
+        int idx = from;
+        while (idx + last < text.length()) {
+            int i = last;
+            while (text.charAt(idx + i) == literal.charAt(i)) {
+                if (i == 0) {
+                    return idx;
+                }
+                i--;
+            }
+            idx += skip[text.charAt(idx + last) & 0xFF];
+        }
+        return -1;
+    }
+
+    // -------------------------
+    // ANALYSIS
+
+    /**
+     * Collects the runs of literal text that every match must contain, and whether the first run is a prefix.
+     */
+    private static class Literals {
+        private final StringBuilder run = new StringBuilder();
+        private boolean atStart = true;
+        private String prefix = null;
+        private String longest = null;
+
+        /**
+         * @return false if the nodes cannot be analyzed
+         */
+        boolean collect(List<Node> nodes) {
+            for (Node node : nodes) {
+                if (!collect(node)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        boolean collect(Node node) {
+            if (node instanceof Node.Literal literal) {
+                run.append(literal.text());
+                return true;
+            }
+            if (node instanceof Node.Group group) {
+                return collect(group.content());
+            }
+            if (node instanceof Node.NonCapturingGroup group) {
+                return collect(group.content());
+            }
+            if (node instanceof Node.Sequence sequence) {
+                return collect(sequence.nodes());
+            }
+            if (node instanceof Node.Quantifier quantifier) {
+                // a quantifier on nothing is rendered behind the preceding atom, that is not reflected in the nodes
+                if (Node.isEmpty(quantifier.atom())) {
+                    return false;
+                }
+                endRun();
+                if (quantifier.min() > 0 && !(quantifier.atom() instanceof Node.Quantifier)) {
+                    if (!collect(quantifier.atom())) {
+                        return false;
+                    }
+                    endRun();
+                }
+                return true;
+            }
+            endRun();
+            return true;
+        }
+
+        void endRun() {
+            if (atStart) {
+                prefix = run.toString();
+            }
+            atStart = false;
+            if (longest == null || run.length() > longest.length()) {
+                longest = run.toString();
+            }
+            run.setLength(0);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package org.tbee.regexpbuilder;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The result of RegExp.profile(samples): where matching the samples spends its steps, per builder call.
+ *
+ * <pre>{@code
+ * Profile profile = regExp.profile(lines);
+ * System.out.println(profile);
+ * // 100.0%  steps=1840  backtracks=212  RegExp.of()  ^(\S+) \[([\w:/]+)\]...
+ * //  84.0%  steps=1546  backtracks=200    group `datetime`  ([\w:/]+)
+ * }</pre>
+ *
+ * @param entries the builder calls in the order they were made, nested calls following their parent
+ * @param samples the number of samples profiled
+ * @param matched the number of samples containing a match
+ * @param aborted the number of samples that took more than 10 million steps, or nested too deep, and were not finished
+ */
+public record Profile(List<Entry> entries, int samples, int matched, int aborted) {
+
+    /**
+     * @param call the builder call, like "oneOrMore(nonWhitespace())" or "group `datetime`"
+     * @param regExp the part of the regular expression it produced
+     * @param depth the nesting level, 0 being the whole RegExp
+     * @param steps the number of times this part, or a part nested in it, was tried
+     * @param backtracks the number of times a choice in this part, or a part nested in it, was undone to try another
+     * @param share the steps as a fraction of the steps of the whole RegExp
+     */
+    public record Entry(String call, String regExp, int depth, long steps, long backtracks, double share) {
+        public String toString() {
+            return call + ": " + Math.round(share * 1000) / 10.0 + "% of steps";
+        }
+    }
+
+    /**
+     * @return the part of the RegExp with the largest share of the steps; of nested parts with the same share, the innermost
+     */
+    public Optional<Entry> hotspot() {
+        return entries.stream()
+                .filter(entry -> entry.depth() > 0)
+                .max(Comparator.comparingDouble(Entry::share).thenComparingInt(Entry::depth));
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Profile of ").append(samples).append(" samples, ").append(matched).append(" matched, ").append(aborted).append(" aborted\n");
+        for (Entry entry : entries) {
+            sb.append(String.format("%5.1f%%  steps=%d  backtracks=%d  %s%s  %s%n",
+                    entry.share() * 100, entry.steps(), entry.backtracks(), "  ".repeat(entry.depth()), entry.call(), entry.regExp()));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,505 @@
+package org.tbee.regexpbuilder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * Runs a RegExp over sample texts on an instrumented backtracking interpreter, which counts per node of the RegExp
+ * how often it is entered, a step, and how often a choice it made is undone, a backtrack.
+ * The interpreter follows the semantics of java.util.regex for the nodes the builder creates, but it is far slower; it is only meant for profiling.
+ */
+final class Profiler {
+
+    static final long MAX_STEPS_PER_SAMPLE = 10_000_000;
+    private static final long STACK_SIZE = 1L << 30; // the interpreter recurses per character
+
+    private final ProfileNode root;
+    private final int groupCount;
+    private int groupIdx = 0; // while building
+
+    private Profiler(List<Node> nodes) {
+        List<ProfileNode> children = new ArrayList<>();
+        for (Node node : nodes) {
+            children.add(build(node, false));
+        }
+        root = new SequenceNode("RegExp.of()", Node.render(nodes), children);
+        groupCount = groupIdx;
+    }
+
+    static Profile profile(List<Node> nodes, Iterable<? extends CharSequence> samples) {
+        Profiler profiler = new Profiler(nodes);
+        int[] counts = new int[3]; // samples, matched, aborted
+        Thread thread = new Thread(null, () -> {
+            for (CharSequence sample : samples) {
+                counts[0]++;
+                Run run = new Run(sample, profiler.groupCount);
+                try {
+                    if (profiler.find(run)) {
+                        counts[1]++;
+                    }
+                }
+                catch (Abort | StackOverflowError e) {
+                    counts[2]++;
+                }
+            }
+        }, "regexp-profiler", STACK_SIZE);
+        thread.start();
+        try {
+            thread.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while profiling", e);
+        }
+
+        List<Profile.Entry> entries = new ArrayList<>();
+        profiler.root.report(0, profiler.root.steps(), entries);
+        return new Profile(List.copyOf(entries), counts[0], counts[1], counts[2]);
+    }
+
+    private boolean find(Run run) {
+        for (int start = 0; start <= run.text.length(); start++) {
+            if (root.match(run, start, pos -> true)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // -------------------------
+    // BUILD
+
+    /**
+     * @param inNonCapturingGroup an alternation directly in a non-capturing group is rendered without its own group
+     */
+    private ProfileNode build(Node node, boolean inNonCapturingGroup) {
+        String regExp = Node.render(List.of(node));
+        if (node instanceof Node.Literal literal) {
+            return new LiteralNode("text(\"" + literal.text() + "\")", regExp, literal.text());
+        }
+        if (node instanceof Node.Shorthand shorthand) {
+            return new CharNode(shorthandCall(shorthand.regExp()), regExp, shorthand(shorthand));
+        }
+        if (node instanceof Node.Anchor anchor) {
+            return new AnchorNode(anchorCall(anchor.regExp()), regExp, anchor.regExp());
+        }
+        if (node instanceof Node.CharClass charClass) {
+            String call = charClass.set().rendersNegated() ? "notOneOf(...)" : "oneOf(...)";
+            return new CharNode(call, regExp, charClass.set()::contains);
+        }
+        if (node instanceof Node.Group group) {
+            int idx = ++groupIdx;
+            ProfileNode content = build(group.content(), false);
+            return new GroupNode(group.name() == null ? "group(...)" : "group `" + group.name() + "`", regExp, idx, content);
+        }
+        if (node instanceof Node.NonCapturingGroup group) {
+            ProfileNode content = build(group.content(), true);
+            return group.atomic()
+                    ? new AtomicNode("atomicGroup(...)", regExp, content)
+                    : new SequenceNode("nonCapturingGroup(...)", regExp, List.of(content));
+        }
+        if (node instanceof Node.Alternation alternation) {
+            int idx = inNonCapturingGroup ? -1 : ++groupIdx;
+            List<ProfileNode> alternatives = new ArrayList<>();
+            for (Node alternative : alternation.alternatives()) {
+                alternatives.add(build(alternative, false));
+            }
+            return new AlternationNode("anyOf(...)", regExp, idx, alternatives);
+        }
+        if (node instanceof Node.Sequence sequence) {
+            List<ProfileNode> children = new ArrayList<>();
+            for (Node child : sequence.nodes()) {
+                children.add(build(child, false));
+            }
+            return new SequenceNode("sequence", regExp, children);
+        }
+        if (node instanceof Node.Quantifier quantifier) {
+            ProfileNode atom = build(quantifier.atom(), false);
+            String call = switch (quantifier.kind()) {
+                case OPTIONAL -> "optional(";
+                case ZERO_OR_MORE -> "zeroOrMore(";
+                case ONE_OR_MORE -> "oneOrMore(";
+                case EXACTLY -> "occurs(" + quantifier.min() + ", ";
+                case AT_LEAST -> "occursAtLeast(" + quantifier.min() + ", ";
+                case BETWEEN -> "occursBetween(" + quantifier.min() + ", " + quantifier.max() + ", ";
+            };
+            call += (atom.children.isEmpty() ? atom.call : "...") + ")";
+            call += switch (quantifier.mode()) {
+                case GREEDY -> "";
+                case RELUCTANT -> ".reluctant()";
+                case POSSESSIVE -> ".possessive()";
+            };
+            return new QuantifierNode(call, regExp, atom, quantifier.min(), quantifier.max(), quantifier.mode());
+        }
+        if (node instanceof Node.BackReference backReference) {
+            return new BackReferenceNode("referToGroup(...)", regExp, backReference.groupIdx());
+        }
+        throw new IllegalStateException("'" + regExp + "' cannot be profiled");
+    }
+
+    private static String shorthandCall(String regExp) {
+        return switch (regExp) {
+            case "." -> "anyChar()";
+            case "\\t" -> "tab()";
+            case "\\r" -> "carriageReturn()";
+            case "\\n" -> "lineFeed()";
+            case "\\d" -> "digit()";
+            case "\\D" -> "nonDigit()";
+            case "\\s" -> "whitespace()";
+            case "\\S" -> "nonWhitespace()";
+            case "\\w" -> "word()";
+            case "\\W" -> "nonWord()";
+            default -> regExp;
+        };
+    }
+
+    private static String anchorCall(String regExp) {
+        return switch (regExp) {
+            case "^" -> "startOfLine()";
+            case "$" -> "endOfLine()";
+            case "\\b" -> "wordBoundary()";
+            case "\\B" -> "nonWordBoundary()";
+            default -> regExp;
+        };
+    }
+
+    private static IntPredicate shorthand(Node.Shorthand shorthand) {
+        CharSet set = CharSet.of(shorthand);
+        if (set == null) {
+            throw new IllegalStateException("'" + shorthand.regExp() + "' cannot be profiled");
+        }
+        return set::contains;
+    }
+
+    private static boolean isLineTerminator(int c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    // -------------------------
+    // INTERPRET
+
+    private interface Continuation {
+        boolean run(int pos);
+    }
+
+    /**
+     * Thrown when a sample takes more than MAX_STEPS_PER_SAMPLE steps
+     */
+    private static final class Abort extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Abort() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * The state of matching one sample
+     */
+    private static final class Run {
+        private final CharSequence text;
+        private final int[] captures;
+        private long steps = 0;
+
+        Run(CharSequence text, int groupCount) {
+            this.text = text;
+            this.captures = new int[2 * (groupCount + 1)];
+            Arrays.fill(captures, -1);
+        }
+    }
+
+    private abstract static class ProfileNode {
+        final String call;
+        final String regExp;
+        final List<ProfileNode> children;
+        long entries = 0;
+        long backtracks = 0;
+
+        ProfileNode(String call, String regExp, List<ProfileNode> children) {
+            this.call = call;
+            this.regExp = regExp;
+            this.children = children;
+        }
+
+        boolean match(Run run, int pos, Continuation continuation) {
+            entries++;
+            if (++run.steps > MAX_STEPS_PER_SAMPLE) {
+                throw new Abort();
+            }
+            return matchNode(run, pos, continuation);
+        }
+
+        abstract boolean matchNode(Run run, int pos, Continuation continuation);
+
+        long steps() {
+            long steps = entries;
+            for (ProfileNode child : children) {
+                steps += child.steps();
+            }
+            return steps;
+        }
+
+        long totalBacktracks() {
+            long total = backtracks;
+            for (ProfileNode child : children) {
+                total += child.totalBacktracks();
+            }
+            return total;
+        }
+
+        void report(int depth, long totalSteps, List<Profile.Entry> entries) {
+            long steps = steps();
+            entries.add(new Profile.Entry(call, regExp, depth, steps, totalBacktracks(), totalSteps == 0 ? 0.0 : (double) steps / totalSteps));
+            for (ProfileNode child : children) {
+                child.report(depth + 1, totalSteps, entries);
+            }
+        }
+
+        /**
+         * Capture the group, and restore the previous capture if the rest of the match fails
+         */
+        static boolean capture(Run run, int groupIdx, int start, int end, Continuation continuation) {
+            int previousStart = run.captures[2 * groupIdx];
+            int previousEnd = run.captures[2 * groupIdx + 1];
+            run.captures[2 * groupIdx] = start;
+            run.captures[2 * groupIdx + 1] = end;
+            if (continuation.run(end)) {
+                return true;
+            }
+            run.captures[2 * groupIdx] = previousStart;
+            run.captures[2 * groupIdx + 1] = previousEnd;
+            return false;
+        }
+    }
+
+    private static final class LiteralNode extends ProfileNode {
+        private final String text;
+
+        LiteralNode(String call, String regExp, String text) {
+            super(call, regExp, List.of());
+            this.text = text;
+        }
+
+        boolean matchNode(Run run, int pos, Continuation continuation) {
+            if (pos + text.length() > run.text.length()) {
+                return false;
+            }
+            for (int i = 0; i < text.length(); i++) {
+                if (run.text.charAt(pos + i) != text.charAt(i)) {
+                    return false;
+                }
+            }
+            return continuation.run(pos + text.length());
+        }
+    }
+
+    private static final class CharNode extends ProfileNode {
+        private final IntPredicate predicate;
+
+        CharNode(String call, String regExp, IntPredicate predicate) {
+            super(call, regExp, List.of());
+            this.predicate = predicate;
+        }
+
+        boolean matchNode(Run run, int pos, Continuation continuation) {
+            if (pos >= run.text.length()) {
+                return false;
+            }
+            int c = Character.codePointAt(run.text, pos);
+            return predicate.test(c) && continuation.run(pos + Character.charCount(c));
+        }
+    }
+
+    private static final class AnchorNode extends ProfileNode {
+        private final String anchor;
+
+        AnchorNode(String call, String regExp, String anchor) {
+            super(call, regExp, List.of());
+            this.anchor = anchor;
+        }
+
+        boolean matchNode(Run run, int pos, Continuation continuation) {
+            CharSequence text = run.text;
+            boolean matches = switch (anchor) {
+                case "^" -> pos == 0;
+                case "$" -> pos == text.length()
+                        || (pos == text.length() - 1 && isLineTerminator(text.charAt(pos)) && !(pos > 0 && text.charAt(pos - 1) == '\r' && text.charAt(pos) == '\n'))
+                        || (pos == text.length() - 2 && text.charAt(pos) == '\r' && text.charAt(pos + 1) == '\n');
+                case "\\b", "\\B" -> {
+                    boolean before = pos > 0 && isWordBoundaryChar(Character.codePointBefore(text, pos));
+                    boolean after = pos < text.length() && isWordBoundaryChar(Character.codePointAt(text, pos));
+                    yield (before != after) == anchor.equals("\\b");
+                }
+                default -> throw new IllegalStateException("'" + anchor + "' cannot be profiled");
+            };
+            return matches && continuation.run(pos);
+        }
+
+        private static boolean isWordBoundaryChar(int c) {
+            return Character.isLetterOrDigit(c) || c == '_';
+        }
+    }
+
+    private static final class SequenceNode extends ProfileNode {
+
+        SequenceNode(String call, String regExp, List<ProfileNode> children) {
+            super(call, regExp, children);
+        }
+
+        boolean matchNode(Run run, int pos, Continuation continuation) {
+            return matchFrom(run, 0, pos, continuation);
+        }
+
+        private boolean matchFrom(Run run, int idx, int pos, Continuation continuation) {
+            if (idx == children.size()) {
+                return continuation.run(pos);
+            }
+            return children.get(idx).match(run, pos, next -> matchFrom(run, idx + 1, next, continuation));
+        }
+    }
+
+    private static final class GroupNode extends ProfileNode {
+        private final int groupIdx;
+
+        GroupNode(String call, String regExp, int groupIdx, ProfileNode content) {
+            super(call, regExp, List.of(content));
+            this.groupIdx = groupIdx;
+        }
+
+        boolean matchNode(Run run, int pos, Continuation continuation) {
+            return children.get(0).match(run, pos, end -> capture(run, groupIdx, pos, end, continuation));
+        }
+    }
+
+    private static final class AtomicNode extends ProfileNode {
+
+        AtomicNode(String call, String regExp, ProfileNode content) {
+            super(call, regExp, List.of(content));
+        }
+
+        boolean matchNode(Run run, int pos, Continuation continuation) {
+            int[] end = {-1};
+            if (!children.get(0).match(run, pos, next -> {
+                end[0] = next;
+                return true;
+            })) {
+                return false;
+            }
+            return continuation.run(end[0]);
+        }
+    }
+
+    private static final class AlternationNode extends ProfileNode {
+        private final int groupIdx; // -1 if not capturing
+
+        AlternationNode(String call, String regExp, int groupIdx, List<ProfileNode> alternatives) {
+            super(call, regExp, alternatives);
+            this.groupIdx = groupIdx;
+        }
+
+        boolean matchNode(Run run, int pos, Continuation continuation) {
+            Continuation afterAlternative = groupIdx < 0 ? continuation : end -> capture(run, groupIdx, pos, end, continuation);
+            for (int i = 0; i < children.size(); i++) {
+                if (i > 0) {
+                    backtracks++;
+                }
+                if (children.get(i).match(run, pos, afterAlternative)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class QuantifierNode extends ProfileNode {
+        private final int min;
+        private final int max;
+        private final Node.Quantifier.Mode mode;
+
+        QuantifierNode(String call, String regExp, ProfileNode atom, int min, int max, Node.Quantifier.Mode mode) {
+            super(call, regExp, List.of(atom));
+            this.min = min;
+            this.max = max;
+            this.mode = mode;
+        }
+
+        boolean matchNode(Run run, int pos, Continuation continuation) {
+            return switch (mode) {
+                case GREEDY -> greedy(run, 0, pos, continuation);
+                case RELUCTANT -> reluctant(run, 0, pos, continuation);
+                case POSSESSIVE -> {
+                    int[] end = {-1};
+                    greedy(run, 0, pos, next -> {
+                        end[0] = next;
+                        return true;
+                    });
+                    yield end[0] >= 0 && continuation.run(end[0]);
+                }
+            };
+        }
+
+        /**
+         * An iteration that matches nothing ends the loop once the minimum is reached, like java.util.regex does.
+         */
+        private boolean greedy(Run run, int count, int pos, Continuation continuation) {
+            if (max < 0 || count < max) {
+                boolean[] iterated = {false};
+                if (children.get(0).match(run, pos, next -> {
+                    if (next == pos && count >= min) {
+                        return false;
+                    }
+                    iterated[0] = true;
+                    return greedy(run, count + 1, next, continuation);
+                })) {
+                    return true;
+                }
+                if (iterated[0] && count >= min) {
+                    backtracks++;
+                }
+            }
+            return count >= min && continuation.run(pos);
+        }
+
+        private boolean reluctant(Run run, int count, int pos, Continuation continuation) {
+            if (count >= min) {
+                if (continuation.run(pos)) {
+                    return true;
+                }
+                if (max >= 0 && count >= max) {
+                    return false;
+                }
+                backtracks++;
+            }
+            return children.get(0).match(run, pos, next -> (next != pos || count < min) && reluctant(run, count + 1, next, continuation));
+        }
+    }
+
+    private static final class BackReferenceNode extends ProfileNode {
+        private final int groupIdx;
+
+        BackReferenceNode(String call, String regExp, int groupIdx) {
+            super(call, regExp, List.of());
+            this.groupIdx = groupIdx;
+        }
+
+        boolean matchNode(Run run, int pos, Continuation continuation) {
+            int start = run.captures[2 * groupIdx];
+            int end = run.captures[2 * groupIdx + 1];
+            if (start < 0) {
+                return false;
+            }
+            int length = end - start;
+            if (pos + length > run.text.length()) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (run.text.charAt(start + i) != run.text.charAt(pos + i)) {
+                    return false;
+                }
+            }
+            return continuation.run(pos + length);
+        }
+    }
+}
@@ -15,6 +15,18 @@ public class RE {
     static public RegExp group(String s) {
         return RegExp.of().group(s);
     }
+    static public RegExp nonCapturingGroup(RegExp regExp) {
+        return RegExp.of().nonCapturingGroup(regExp);
+    }
+    static public RegExp nonCapturingGroup(String s) {
+        return RegExp.of().nonCapturingGroup(s);
+    }
+    static public RegExp atomicGroup(RegExp regExp) {
+        return RegExp.of().atomicGroup(regExp);
+    }
+    static public RegExp atomicGroup(String s) {
+        return RegExp.of().atomicGroup(s);
+    }
 
     // -------------------------
     // PATTERN
@@ -40,6 +52,12 @@ public class RE {
     public RegExp range(String... fromToChars) {
         return RegExp.of().range(fromToChars);
     }
+    static public RegExp range(char... fromToChars) {
+        return RegExp.of().range(fromToChars);
+    }
+    static public RegExp range(int fromCodePoint, int toCodePoint) {
+        return RegExp.of().range(fromCodePoint, toCodePoint);
+    }
 
     static public RegExp oneOf(RegExp regExp) {
         return RegExp.of().oneOf(regExp);
@@ -47,6 +65,12 @@ public class RE {
     static public RegExp oneOf(String s) {
         return RegExp.of().oneOf(s);
     }
+    static public RegExp oneOf(char... chars) {
+        return RegExp.of().oneOf(chars);
+    }
+    static public RegExp oneOf(CharSet set) {
+        return RegExp.of().oneOf(set);
+    }
 
     static public RegExp notOneOf(RegExp regExp) {
         return RegExp.of().notOneOf(regExp);
@@ -54,6 +78,12 @@ public class RE {
     static public RegExp notOneOf(String s) {
         return RegExp.of().notOneOf(s);
     }
+    static public RegExp notOneOf(char... chars) {
+        return RegExp.of().notOneOf(chars);
+    }
+    static public RegExp notOneOf(CharSet set) {
+        return RegExp.of().notOneOf(set);
+    }
 
     static public RegExp optional(RegExp regExp) {
         return RegExp.of().optional(regExp);
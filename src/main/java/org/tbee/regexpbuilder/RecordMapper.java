@@ -0,0 +1,182 @@
+package org.tbee.regexpbuilder;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.RecordComponent;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Optional;
+import java.util.regex.MatchResult;
+
+/**
+ * Maps the named groups of a match onto the components of a record with the same names, see RegExp.mapTo.
+ * The group indexes, converters and record constructor are resolved once, when the mapper is created,
+ * so mapping a match is a straight sequence of conversions followed by a constructor call.
+ *
+ * <pre>{@code
+ * record LogLine(String ip, int status, long size) {}
+ * RecordMapper<LogLine> mapper = regExp.mapTo(LogLine.class);
+ * Optional<LogLine> logLine = mapper.match(line);
+ * }</pre>
+ *
+ * Supported component types are String, CharSequence, the primitive types and their wrappers, BigInteger, BigDecimal and enums.
+ * A component whose group did not participate in the match becomes null; for a primitive component that is an error.
+ * A RecordMapper is immutable and thread-safe.
+ */
+public final class RecordMapper<R extends Record> {
+
+    private final CompiledRegExp compiledRegExp;
+    private final Class<R> recordClass;
+    private final String[] names;
+    private final int[] groupIndexes;
+    private final Converter[] converters;
+    private final boolean[] primitives;
+    private final MethodHandle constructor;
+
+    RecordMapper(CompiledRegExp compiledRegExp, Class<R> recordClass) {
+        this.compiledRegExp = compiledRegExp;
+        this.recordClass = recordClass;
+        RecordComponent[] components = recordClass.getRecordComponents();
+        if (components == null) {
+            throw new IllegalArgumentException(recordClass.getName() + " is not a record");
+        }
+        names = new String[components.length];
+        groupIndexes = new int[components.length];
+        converters = new Converter[components.length];
+        primitives = new boolean[components.length];
+        Class<?>[] types = new Class<?>[components.length];
+        for (int i = 0; i < components.length; i++) {
+            names[i] = components[i].getName();
+            groupIndexes[i] = compiledRegExp.indexOf(names[i]);
+            types[i] = components[i].getType();
+            converters[i] = converter(types[i], names[i]);
+            primitives[i] = types[i].isPrimitive();
+        }
+        try {
+            Constructor<R> canonical = recordClass.getDeclaredConstructor(types);
+            canonical.setAccessible(true);
+            constructor = MethodHandles.lookup().unreflectConstructor(canonical).asSpreader(Object[].class, components.length);
+        }
+        catch (ReflectiveOperationException | RuntimeException e) {
+            throw new IllegalArgumentException("Cannot access the constructor of " + recordClass.getName(), e);
+        }
+    }
+
+    // -------------------------
+    // MAP
+
+    /**
+     * @param text the text to match as a whole
+     * @return the record, or empty if the text does not match
+     */
+    public Optional<R> match(CharSequence text) {
+        int[] offsets = compiledRegExp.newOffsets();
+        return compiledRegExp.matches(text, offsets) ? Optional.of(map(text, offsets)) : Optional.empty();
+    }
+
+    /**
+     * @param text the text to search
+     * @return the record for the first match, or empty if there is none
+     */
+    public Optional<R> find(CharSequence text) {
+        int[] offsets = compiledRegExp.newOffsets();
+        return compiledRegExp.find(text, 0, offsets) ? Optional.of(map(text, offsets)) : Optional.empty();
+    }
+
+    /**
+     * @param matchResult a match of the regular expression this mapper was created for
+     * @return the record
+     */
+    public R map(MatchResult matchResult) {
+        Object[] args = new Object[groupIndexes.length];
+        for (int i = 0; i < groupIndexes.length; i++) {
+            String group = matchResult.group(groupIndexes[i]);
+            args[i] = convert(i, group, 0, group == null ? -1 : group.length());
+        }
+        return construct(args);
+    }
+
+    private R map(CharSequence text, int[] offsets) {
+        Object[] args = new Object[groupIndexes.length];
+        for (int i = 0; i < groupIndexes.length; i++) {
+            args[i] = convert(i, text, offsets[2 * groupIndexes[i]], offsets[2 * groupIndexes[i] + 1]);
+        }
+        return construct(args);
+    }
+
+    private Object convert(int i, CharSequence text, int start, int end) {
+        if (start < 0) {
+            if (primitives[i]) {
+                throw new IllegalStateException("Group '" + names[i] + "' did not participate in the match, so it cannot be mapped onto a primitive component");
+            }
+            return null;
+        }
+        return converters[i].convert(text, start, end);
+    }
+
+    private R construct(Object[] args) {
+        try {
+            return recordClass.cast(constructor.invoke(args));
+        }
+        catch (RuntimeException | Error e) {
+            throw e;
+        }
+        catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // -------------------------
+    // CONVERT
+
+    private interface Converter {
+        Object convert(CharSequence text, int start, int end);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Converter converter(Class<?> type, String name) {
+        if (type == String.class || type == CharSequence.class) {
+            return (text, start, end) -> text.subSequence(start, end).toString();
+        }
+        if (type == int.class || type == Integer.class) {
+            return GroupExtractor::parseInt;
+        }
+        if (type == long.class || type == Long.class) {
+            return GroupExtractor::parseLong;
+        }
+        if (type == short.class || type == Short.class) {
+            return (text, start, end) -> Short.parseShort(text.subSequence(start, end).toString());
+        }
+        if (type == byte.class || type == Byte.class) {
+            return (text, start, end) -> Byte.parseByte(text.subSequence(start, end).toString());
+        }
+        if (type == double.class || type == Double.class) {
+            return (text, start, end) -> Double.parseDouble(text.subSequence(start, end).toString());
+        }
+        if (type == float.class || type == Float.class) {
+            return (text, start, end) -> Float.parseFloat(text.subSequence(start, end).toString());
+        }
+        if (type == boolean.class || type == Boolean.class) {
+            return (text, start, end) -> Boolean.parseBoolean(text.subSequence(start, end).toString());
+        }
+        if (type == char.class || type == Character.class) {
+            return (text, start, end) -> {
+                if (end - start != 1) {
+                    throw new IllegalArgumentException("Group '" + name + "' must be a single character: \"" + text.subSequence(start, end) + "\"");
+                }
+                return text.charAt(start);
+            };
+        }
+        if (type == BigInteger.class) {
+            return (text, start, end) -> new BigInteger(text.subSequence(start, end).toString());
+        }
+        if (type == BigDecimal.class) {
+            return (text, start, end) -> new BigDecimal(text.subSequence(start, end).toString());
+        }
+        if (type.isEnum()) {
+            return (text, start, end) -> Enum.valueOf((Class<Enum>) type, text.subSequence(start, end).toString());
+        }
+        throw new IllegalArgumentException("Record component '" + name + "' has an unsupported type " + type.getName());
+    }
+}
@@ -1,17 +1,44 @@
 package org.tbee.regexpbuilder;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Predicate;
+import java.util.regex.MatchResult;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 // TODO: lookbehind etc https://developer.mozilla.org/en-US/docs/Web/JavaScript/Guide/Regular_Expressions/Cheatsheet
 
 public class RegExp {
 
-    private String regExpString = "";
+    private final List<Node> nodes = new ArrayList<>();
     private int groupIdx = 0;
     private Map<String, Integer> groupNameToIdx = new HashMap<>();
+    private String regExpString = null; // rendered lazily, cleared whenever a node is added
+    private volatile CompiledRegExp compiled = null; // compiled lazily, cleared whenever a node is added
+    private final ThreadLocal<Matcher> threadMatcher = new ThreadLocal<>(); // per RegExp, because equal RegExps share their CompiledRegExp
+    private boolean strict = false;
+    private Backend backend = Backend.AUTO;
+    private String ruleName = null; // not null if instrumented
 
     // -------------------------
     // FACTORY
@@ -24,8 +51,7 @@ public class RegExp {
     // -------------------------
     // GROUP
 
-    private RegExp startGroup(String name) {
-        regExpString += "(";
+    public RegExp group(String name, RegExp regExp) {
         groupIdx++;
         if (name != null) {
             if (groupNameToIdx.containsKey(name)) {
@@ -33,19 +59,7 @@ public class RegExp {
             }
             groupNameToIdx.put(name, groupIdx);
         }
-        return this;
-    }
-
-    private RegExp endGroup() {
-        regExpString += ")";
-        return this;
-    }
-
-    public RegExp group(String name, RegExp regExp) {
-        startGroup(name);
-        regExpString += regExp.toString();
-        endGroup();
-        return this;
+        return append(new Node.Group(name, Node.of(regExp)));
     }
     public RegExp group(String name, String s) {
         return group(name, RegExp.of().text(s));
@@ -57,9 +71,39 @@ public class RegExp {
         return group(null, s);
     }
 
+    /**
+     * Group without capturing, so it does not get an index and cannot be referred to.
+     * If the group only contains an anyOf, the anyOf does not capture either.
+     * @param regExp
+     * @return
+     */
+    public RegExp nonCapturingGroup(RegExp regExp) {
+        return append(new Node.NonCapturingGroup(false, Node.of(regExp)));
+    }
+    public RegExp nonCapturingGroup(String s) {
+        return nonCapturingGroup(RegExp.of().text(s));
+    }
+
+    /**
+     * Group without capturing, and once the group has matched the engine will not backtrack into it to try another way.
+     * This makes a match fail fast where backtracking would not help.
+     * If the group only contains an anyOf, the anyOf does not capture either.
+     * @param regExp
+     * @return
+     */
+    public RegExp atomicGroup(RegExp regExp) {
+        return append(new Node.NonCapturingGroup(true, Node.of(regExp)));
+    }
+    public RegExp atomicGroup(String s) {
+        return atomicGroup(RegExp.of().text(s));
+    }
+
     public RegExp referToGroup(String name) {
-        regExpString += "\\" + groupNameToIdx.get(name);
-        return this;
+        Integer idx = groupNameToIdx.get(name);
+        if (idx == null) {
+            throw new RuntimeException("Group '" + name + "' does not exist");
+        }
+        return append(new Node.BackReference(idx));
     }
 
     /**
@@ -81,8 +125,7 @@ public class RegExp {
      * @return
      */
     public RegExp text(String s) {
-        regExpString += escape(s);
-        return this;
+        return append(new Node.Literal(s));
     }
 
     /**
@@ -93,64 +136,58 @@ public class RegExp {
      * @return
      */
     public RegExp range(String fromChar, String toChar) {
-        regExpString += "["
-                + escape(checkRangeValue(fromChar)) + "-" + escape(checkRangeValue(toChar))
-                + "]";
-        return this;
+        return range(new String[]{fromChar, toChar});
     }
     public RegExp range(String fromChar0, String toChar0, String fromChar1, String toChar1) {
-        regExpString += "["
-                + escape(checkRangeValue(fromChar0)) + "-" + escape(checkRangeValue(toChar0))
-                + escape(checkRangeValue(fromChar1)) + "-" + escape(checkRangeValue(toChar1))
-                + "]";
-        return this;
+        return range(new String[]{fromChar0, toChar0, fromChar1, toChar1});
     }
     public RegExp range(String fromChar0, String toChar0, String fromChar1, String toChar1, String fromChar2, String toChar2) {
-        regExpString += "["
-                + escape(checkRangeValue(fromChar0)) + "-" + escape(checkRangeValue(toChar0))
-                + escape(checkRangeValue(fromChar1)) + "-" + escape(checkRangeValue(toChar1))
-                + escape(checkRangeValue(fromChar2)) + "-" + escape(checkRangeValue(toChar2))
-                + "]";
-        return this;
+        return range(new String[]{fromChar0, toChar0, fromChar1, toChar1, fromChar2, toChar2});
     }
     public RegExp range(String fromChar0, String toChar0, String fromChar1, String toChar1, String fromChar2, String toChar2, String fromChar3, String toChar3) {
-        regExpString += "["
-                + escape(checkRangeValue(fromChar0)) + "-" + escape(checkRangeValue(toChar0))
-                + escape(checkRangeValue(fromChar1)) + "-" + escape(checkRangeValue(toChar1))
-                + escape(checkRangeValue(fromChar2)) + "-" + escape(checkRangeValue(toChar2))
-                + escape(checkRangeValue(fromChar3)) + "-" + escape(checkRangeValue(toChar3))
-                + "]";
-        return this;
+        return range(new String[]{fromChar0, toChar0, fromChar1, toChar1, fromChar2, toChar2, fromChar3, toChar3});
     }
     public RegExp range(String fromChar0, String toChar0, String fromChar1, String toChar1, String fromChar2, String toChar2, String fromChar3, String toChar3, String fromChar4, String toChar4) {
-        regExpString += "["
-                + escape(checkRangeValue(fromChar0)) + "-" + escape(checkRangeValue(toChar0))
-                + escape(checkRangeValue(fromChar1)) + "-" + escape(checkRangeValue(toChar1))
-                + escape(checkRangeValue(fromChar2)) + "-" + escape(checkRangeValue(toChar2))
-                + escape(checkRangeValue(fromChar3)) + "-" + escape(checkRangeValue(toChar3))
-                + escape(checkRangeValue(fromChar4)) + "-" + escape(checkRangeValue(toChar4))
-                + "]";
-        return this;
+        return range(new String[]{fromChar0, toChar0, fromChar1, toChar1, fromChar2, toChar2, fromChar3, toChar3, fromChar4, toChar4});
     }
     public RegExp range(String... fromToChars) {
-        if (fromToChars.length == 0) {
+        checkPairs(fromToChars.length);
+        CharSet set = CharSet.empty();
+        for (int i = 0; i < fromToChars.length; i += 2) {
+            set = set.union(CharSet.range(checkRangeValue(fromToChars[i]), checkRangeValue(fromToChars[i + 1])));
+        }
+        return oneOf(set);
+    }
+    /**
+     * Match a range of characters, given as pairs of from and to characters, like range('a', 'z', '0', '9').
+     */
+    public RegExp range(char... fromToChars) {
+        checkPairs(fromToChars.length);
+        CharSet set = CharSet.empty();
+        for (int i = 0; i < fromToChars.length; i += 2) {
+            set = set.union(CharSet.range(fromToChars[i], fromToChars[i + 1]));
+        }
+        return oneOf(set);
+    }
+    /**
+     * Match a range of code points, for characters outside the basic multilingual plane.
+     */
+    public RegExp range(int fromCodePoint, int toCodePoint) {
+        return oneOf(CharSet.range(fromCodePoint, toCodePoint));
+    }
+    private void checkPairs(int length) {
+        if (length == 0) {
             throw new IllegalArgumentException("You need to provide at least 2 values");
         }
-        if (fromToChars.length % 2 != 0) {
+        if (length % 2 != 0) {
             throw new IllegalArgumentException("You need to provide always pairs of 2");
         }
-        regExpString += "[";
-        for (int i = 0; i < fromToChars.length; i += 2) {
-            regExpString += escape(checkRangeValue(fromToChars[i])) + "-" + escape(checkRangeValue(fromToChars[i + 1]));
-        }
-        regExpString += "]";
-        return this;
     }
-    private String checkRangeValue(String s) {
-        if (s.length() != 1) {
+    private int checkRangeValue(String s) {
+        if (s.isEmpty() || s.codePointCount(0, s.length()) != 1) {
             throw new IllegalArgumentException("The range character parameters must be exactly 1 in length");
         }
-        return s;
+        return s.codePointAt(0);
     }
 
     /**
@@ -159,8 +196,7 @@ public class RegExp {
      * @return
      */
     public RegExp oneOf(RegExp regExp) {
-        regExpString += "[" + regExp.toString() + "]";
-        return this;
+        return oneOf(CharSet.of(regExp.nodes));
     }
     /**
      * Match one of the characters
@@ -168,7 +204,17 @@ public class RegExp {
      * @return
      */
     public RegExp oneOf(String s) {
-        return oneOf(RegExp.of().text(s));
+        return oneOf(CharSet.of(s));
+    }
+    public RegExp oneOf(char... chars) {
+        return oneOf(CharSet.of(chars));
+    }
+    /**
+     * Match one of the characters in the set.
+     * The set is rendered as the shortest class found, so oneOf(CharSet.of("dcab")) becomes "[a-d]".
+     */
+    public RegExp oneOf(CharSet set) {
+        return append(new Node.CharClass(set));
     }
 
     /**
@@ -177,8 +223,7 @@ public class RegExp {
      * @return
      */
     public RegExp notOneOf(RegExp regExp) {
-        regExpString += "[^" + regExp.toString() + "]";
-        return this;
+        return notOneOf(CharSet.of(regExp.nodes));
     }
     /**
      * Match any character but the specified ones
@@ -186,7 +231,16 @@ public class RegExp {
      * @return
      */
     public RegExp notOneOf(String s) {
-        return notOneOf(RegExp.of().text(s));
+        return notOneOf(CharSet.of(s));
+    }
+    public RegExp notOneOf(char... chars) {
+        return notOneOf(CharSet.of(chars));
+    }
+    /**
+     * Match any character that is not in the set
+     */
+    public RegExp notOneOf(CharSet set) {
+        return oneOf(set.negate());
     }
 
     /**
@@ -195,8 +249,7 @@ public class RegExp {
      * @return
      */
     public RegExp optional(RegExp regExp) {
-        regExpString += regExp.toString() + "?";
-        return this;
+        return quantify(regExp, Node.Quantifier.Kind.OPTIONAL, 0, 1);
     }
     /**
      * These characters may be present, or not.
@@ -213,8 +266,7 @@ public class RegExp {
      * @return
      */
     public RegExp zeroOrMore(RegExp regExp) {
-        regExpString += regExp.toString() + "*";
-        return this;
+        return quantify(regExp, Node.Quantifier.Kind.ZERO_OR_MORE, 0, -1);
     }
 
     /**
@@ -232,8 +284,7 @@ public class RegExp {
      * @return
      */
     public RegExp oneOrMore(RegExp regExp) {
-        regExpString += regExp.toString() + "+";
-        return this;
+        return quantify(regExp, Node.Quantifier.Kind.ONE_OR_MORE, 1, -1);
     }
     /**
      * These characters must be present once, but can be many times
@@ -250,13 +301,14 @@ public class RegExp {
      * @return
      */
     public RegExp anyOf(RegExp... regExps) {
-        boolean first = true;
-        for (RegExp regExp : regExps) {
-            regExpString += (first ? "(" : "|") + regExp.toString();
-            first = false;
+        if (regExps.length == 0) {
+            throw new IllegalArgumentException("You need to provide at least 1 value");
         }
-        regExpString += ")";
-        return this;
+        Node[] alternatives = new Node[regExps.length];
+        for (int i = 0; i < regExps.length; i++) {
+            alternatives[i] = Node.of(regExps[i]);
+        }
+        return append(new Node.Alternation(List.of(alternatives)));
     }
     /**
      * Match any of the blocks of characters
@@ -294,8 +346,7 @@ public class RegExp {
      * @return
      */
     public RegExp occurs(int times, RegExp regExp) {
-        regExpString += regExp.toString() + "{" + times + "}";
-        return this;
+        return quantify(regExp, Node.Quantifier.Kind.EXACTLY, times, times);
     }
     /**
      * These characters are present N times
@@ -312,8 +363,7 @@ public class RegExp {
      * @return
      */
     public RegExp occursAtLeast(int times, RegExp regExp) {
-        regExpString += regExp.toString() + "{" + times + ",}";
-        return this;
+        return quantify(regExp, Node.Quantifier.Kind.AT_LEAST, times, -1);
     }
     /**
      * These characters are present at least N times
@@ -330,8 +380,7 @@ public class RegExp {
      * @return
      */
     public RegExp occursBetween(int minTimes, int maxTimes, RegExp regExp) {
-        regExpString += regExp.toString() + "{" + minTimes + "," + maxTimes + "}";
-        return this;
+        return quantify(regExp, Node.Quantifier.Kind.BETWEEN, minTimes, maxTimes);
     }
     /**
      * These characters are present N to M times
@@ -342,39 +391,51 @@ public class RegExp {
         return occursBetween(minTimes, maxTimes, RegExp.of().text(s));
     }
 
+    /**
+     * Make the directly preceding quantifier possessive: it matches as many occurrences as possible and never gives any back,
+     * so a failing match fails fast instead of trying all shorter alternatives.
+     * For example oneOrMore(digit()).possessive() renders as "\d++".
+     * @return
+     */
+    public RegExp possessive() {
+        return mode(Node.Quantifier.Mode.POSSESSIVE, "possessive");
+    }
+
+    /**
+     * Make the directly preceding quantifier reluctant: it matches as few occurrences as possible.
+     * For example zeroOrMore(anyChar()).reluctant() renders as ".*?".
+     * @return
+     */
+    public RegExp reluctant() {
+        return mode(Node.Quantifier.Mode.RELUCTANT, "reluctant");
+    }
+
     // -------------------------
     // LITERAL
 
     public RegExp anyChar() {
-        regExpString += ".";
-        return this;
+        return append(new Node.Shorthand("."));
     }
 
     public RegExp startOfLine() {
-        regExpString += "^";
-        return this;
+        return append(new Node.Anchor("^"));
     }
 
     public RegExp endOfLine() {
-        regExpString += "$";
-        return this;
+        return append(new Node.Anchor("$"));
     }
 
     public RegExp tab() {
-        regExpString += "\\t";
-        return this;
+        return append(new Node.Shorthand("\\t"));
     }
     public RegExp carriageReturn() {
-        regExpString += "\\r";
-        return this;
+        return append(new Node.Shorthand("\\r"));
     }
     public RegExp lineFeed() {
-        regExpString += "\\n";
-        return this;
+        return append(new Node.Shorthand("\\n"));
     }
     public RegExp doubleQuote() {
-        regExpString += "\\";
-        return this;
+        return append(new Node.Shorthand("\\"));
     }
 
     /**
@@ -382,8 +443,7 @@ public class RegExp {
      * @return
      */
     public RegExp digit() {
-        regExpString += "\\d";
-        return this;
+        return append(new Node.Shorthand("\\d"));
     }
 
     /**
@@ -391,8 +451,7 @@ public class RegExp {
      * @return
      */
     public RegExp nonDigit() {
-        regExpString += "\\D";
-        return this;
+        return append(new Node.Shorthand("\\D"));
     }
 
     /**
@@ -400,8 +459,7 @@ public class RegExp {
      * @return
      */
     public RegExp whitespace() {
-        regExpString += "\\s";
-        return this;
+        return append(new Node.Shorthand("\\s"));
     }
 
     /**
@@ -409,8 +467,7 @@ public class RegExp {
      * @return
      */
     public RegExp nonWhitespace() {
-        regExpString += "\\S";
-        return this;
+        return append(new Node.Shorthand("\\S"));
     }
 
     /**
@@ -418,8 +475,7 @@ public class RegExp {
      * @return
      */
     public RegExp word() {
-        regExpString += "\\w";
-        return this;
+        return append(new Node.Shorthand("\\w"));
     }
     /**
      * Use word()
@@ -435,8 +491,7 @@ public class RegExp {
      * @return
      */
     public RegExp nonWord() {
-        regExpString += "\\W";
-        return this;
+        return append(new Node.Shorthand("\\W"));
     }
     /**
      * Use nonWord()
@@ -448,25 +503,161 @@ public class RegExp {
     }
 
     public RegExp wordBoundary() {
-        regExpString += "\\b";
-        return this;
+        return append(new Node.Anchor("\\b"));
     }
 
     public RegExp nonWordBoundary() {
-        regExpString += "\\B";
-        return this;
+        return append(new Node.Anchor("\\B"));
     }
 
     // -------------------------
     // BUILD
 
     public String toString() {
+        String regExpString = this.regExpString;
+        if (regExpString == null) {
+            regExpString = Node.render(nodes);
+            this.regExpString = regExpString;
+        }
         return regExpString;
     }
 
+    /**
+     * RegExps are equal if they render to the same regular expression, with the same group names and settings,
+     * regardless of how they were built; so text("ab") equals text("a").text("b").
+     * A RegExp is mutable, so do not change it while it is used as a key in a map.
+     */
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof RegExp other)) {
+            return false;
+        }
+        return toString().equals(other.toString())
+            && groupNameToIdx.equals(other.groupNameToIdx)
+            && backend == other.backend
+            && strict == other.strict
+            && Objects.equals(ruleName, other.ruleName);
+    }
+
+    public int hashCode() {
+        return Objects.hash(toString(), groupNameToIdx, backend, strict, ruleName);
+    }
+
+    /**
+     * Freeze the current state of this RegExp into an immutable, thread-safe CompiledRegExp.
+     * The result is reused until the regular expression is changed, and shared with equal RegExps, see compile(Backend).
+     * The expression is simplified before it is compiled, for example "\d\d\d" becomes "\d{3}", so its pattern may differ from toString(); group indexes are not affected.
+     * @return
+     * @throws IllegalStateException in strict mode, if the expression risks catastrophic backtracking
+     */
+    public CompiledRegExp compile() {
+        CompiledRegExp compiled = this.compiled;
+        if (compiled == null) {
+            compiled = compile(backend);
+            this.compiled = compiled;
+        }
+        return compiled;
+    }
+
+    /**
+     * Compile using a specific backend.
+     * Compiled expressions are shared through the global RegExpRegistry, so an equal RegExp, see equals(), is compiled only once.
+     * @param backend the engine to use for matching
+     * @return
+     * @throws IllegalStateException in strict mode, if the expression risks catastrophic backtracking
+     */
+    public CompiledRegExp compile(Backend backend) {
+        return compile(backend, RegExpRegistry.global());
+    }
+
+    CompiledRegExp compile(Backend backend, RegExpRegistry registry) {
+        if (strict) {
+            Analysis analysis = analyze();
+            if (!analysis.isLinear()) {
+                throw new IllegalStateException("Regular expression " + toString() + " risks catastrophic backtracking: " + analysis.findings());
+            }
+        }
+        List<Node> nodes = Optimizer.optimize(List.copyOf(this.nodes));
+        String regExpString = Node.render(nodes);
+        Map<String, Integer> groupNameToIdx = Map.copyOf(this.groupNameToIdx);
+        String ruleName = this.ruleName;
+        return registry.intern(regExpString, groupNameToIdx, backend, ruleName, () -> new CompiledRegExp(regExpString, nodes, groupNameToIdx, backend, ruleName));
+    }
+
+    /**
+     * Match the samples on an instrumented interpreter, and report how many steps and backtracks each builder call causes, see Profile.
+     * This is far slower than actual matching, so use a representative sample, not a production load.
+     * @param samples the texts to find a match in
+     * @return
+     * @throws IllegalStateException if the expression contains something the interpreter does not support
+     */
+    public Profile profile(Iterable<? extends CharSequence> samples) {
+        return Profiler.profile(List.copyOf(nodes), samples);
+    }
+
+    /**
+     * Select the engine used by compile(), and thus by find(), match() and matches().
+     * @param backend the engine, AUTO by default
+     * @return
+     */
+    public RegExp backend(Backend backend) {
+        this.backend = backend;
+        compiled = null;
+        return this;
+    }
+
+    Backend backend() {
+        return backend;
+    }
+
+    /**
+     * Record metrics for the find and matches calls, see RegExpMetrics.
+     * This covers the methods of RegExp and CompiledRegExp that do not return a Matcher, which is used outside the control of this library.
+     * @param ruleName the name under which the metrics are reported
+     * @return
+     */
+    public RegExp instrument(String ruleName) {
+        this.ruleName = ruleName;
+        compiled = null;
+        return this;
+    }
+
+    /**
+     * @return the metrics, or empty if this RegExp is not instrumented, see CompiledRegExp.metrics()
+     */
+    public Optional<RegExpMetrics> metrics() {
+        return compile().metrics();
+    }
+
+    /**
+     * Find the parts of the expression that can make matching take polynomial or exponential time on a non-matching input,
+     * like a repeated group that contains a quantifier "(\w+\s?)*", or adjacent quantifiers matching the same characters "\d+\d+".
+     * Use possessive quantifiers or atomic groups to remove these risks.
+     * @return the findings and the estimated worst-case complexity
+     */
+    public Analysis analyze() {
+        return Analyzer.analyze(nodes);
+    }
+
+    /**
+     * In strict mode compile(), and thus all matching, throws an IllegalStateException if analyze() does not report linear complexity.
+     * So rules that risk catastrophic backtracking are rejected when they are loaded, instead of when they are matched.
+     * @return
+     */
+    public RegExp strict() {
+        strict = true;
+        compiled = null;
+        return this;
+    }
+
+    /**
+     * The pattern is compiled once and reused until the regular expression is changed.
+     * @return
+     */
     public Pattern toPattern() {
-        Pattern pattern = Pattern.compile(regExpString);
-        return pattern;
+        return compile().pattern();
     }
 
     public Matcher toMatcher(String text) {
@@ -474,6 +665,252 @@ public class RegExp {
         return matcher;
     }
 
+    /**
+     * Returns a matcher that is reused by the current thread: the next call to toReusedMatcher on this RegExp from the same thread resets it to the new text.
+     * Other RegExps, also equal ones that share the compiled expression, have their own matcher.
+     * So do not hold on to the matcher, or pass it to another thread; use toMatcher for that.
+     * @param text the text to match
+     * @return
+     */
+    public Matcher toReusedMatcher(CharSequence text) {
+        Pattern pattern = toPattern();
+        Matcher matcher = threadMatcher.get();
+        if (matcher == null || matcher.pattern() != pattern) {
+            matcher = pattern.matcher(text);
+            threadMatcher.set(matcher);
+            return matcher;
+        }
+        return matcher.reset(text);
+    }
+
+    /**
+     * @return a new extractor for reading groups without allocating, see GroupExtractor
+     */
+    public GroupExtractor toGroupExtractor() {
+        return compile().groupExtractor();
+    }
+
+    /**
+     * Map the named groups onto the components of a record with the same names, see RecordMapper.
+     * @param recordClass the record to create
+     * @return a mapper, to be created once and reused
+     * @throws IllegalArgumentException if a component has no group with the same name, or a type that cannot be converted
+     */
+    public <R extends Record> RecordMapper<R> mapTo(Class<R> recordClass) {
+        return new RecordMapper<>(compile(), recordClass);
+    }
+
+    /**
+     * Find the first match in the text, see CompiledRegExp.find
+     * @param text the text to search
+     * @return the match, or empty if there is none
+     */
+    public Optional<MatchResult> find(CharSequence text) {
+        return compile().find(text);
+    }
+
+    /**
+     * Match the whole text, see CompiledRegExp.match
+     * @param text the text to match
+     * @return the match, or empty if the text does not match
+     */
+    public Optional<MatchResult> match(CharSequence text) {
+        return compile().match(text);
+    }
+
+    /**
+     * @param text the text to match
+     * @return true if the whole text matches
+     */
+    public boolean matches(CharSequence text) {
+        return compile().matches(text);
+    }
+
+    /**
+     * Whether the text contains a match, without capturing groups, see CompiledRegExp.test
+     * @param text the text to search
+     * @return true if there is a match anywhere in the text
+     */
+    public boolean test(CharSequence text) {
+        return compile().test(text);
+    }
+
+    /**
+     * The number of non-overlapping matches, without capturing groups, see CompiledRegExp.count
+     * @param text the text to search
+     * @return the number of matches
+     */
+    public int count(CharSequence text) {
+        return compile().count(text);
+    }
+
+    /**
+     * @return a predicate that tests whether a text contains a match, see test(CharSequence)
+     */
+    public Predicate<CharSequence> asPredicate() {
+        return compile().asPredicate();
+    }
+
+    /**
+     * Match on the bytes of ASCII or UTF-8 text without decoding them, see CompiledRegExp.matcher(ByteBuffer)
+     * @param buffer the bytes between its position and limit are matched
+     * @return a matcher whose offsets are in bytes
+     */
+    public Matcher toMatcher(ByteBuffer buffer) {
+        return compile().matcher(buffer);
+    }
+
+    /**
+     * Find the first match in the bytes of ASCII or UTF-8 text, see CompiledRegExp.find(ByteBuffer)
+     * @param buffer the bytes between its position and limit are searched
+     * @return the match with offsets in bytes, or empty if there is none
+     */
+    public Optional<MatchResult> find(ByteBuffer buffer) {
+        return compile().find(buffer);
+    }
+
+    /**
+     * @param buffer the bytes between its position and limit are matched
+     * @return true if all bytes match, see CompiledRegExp.matches(ByteBuffer)
+     */
+    public boolean matches(ByteBuffer buffer) {
+        return compile().matches(buffer);
+    }
+
+    /**
+     * Find all matches in the text read from the reader, lazily.
+     * Only a window of the text is kept in memory, so this works on inputs of any size, as long as each match fits in the window (16M chars).
+     * The reader is not closed.
+     * @param reader the text to search
+     * @return the matches, as StreamMatchResult; an IOException while reading is thrown as UncheckedIOException
+     */
+    public Stream<MatchResult> findAll(Reader reader) {
+        StreamMatcher streamMatcher = new StreamMatcher(toPattern(), reader);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(streamMatcher, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Find all matches in the text read from the channel, lazily, see findAll(Reader).
+     * Malformed or unmappable bytes are replaced, like in findAll(Path, Charset), instead of failing the stream.
+     * The channel is not closed.
+     * @param channel the bytes to search
+     * @param charset the encoding of the bytes
+     * @return
+     */
+    public Stream<MatchResult> findAll(ReadableByteChannel channel, Charset charset) {
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        return findAll(Channels.newReader(channel, decoder, -1));
+    }
+
+    /**
+     * Find all matches in a file, lazily, see findAll(Reader).
+     * The file is memory-mapped, and closed when the stream is closed, so use the stream in a try-with-resources.
+     * @param path the file to search
+     * @param charset the encoding of the file
+     * @return
+     * @throws IOException if the file cannot be opened
+     */
+    public Stream<MatchResult> findAll(Path path, Charset charset) throws IOException {
+        MappedFileReader reader = new MappedFileReader(path, charset);
+        return findAll(reader).onClose(() -> {
+            try {
+                reader.close();
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Find all matches in a large text on all cores, see findAllParallel(CharSequence, RegExp, boolean); the records are lines.
+     * @param text the text to search
+     * @return the matches in order of their position
+     */
+    public Stream<MatchResult> findAllParallel(CharSequence text) {
+        return findAllParallel(text, RegExp.of().lineFeed(), true);
+    }
+
+    /**
+     * Find all matches in a large text on all cores.
+     * The text is split into chunks after a delimiter, and the chunks are matched in parallel on the common ForkJoinPool, each chunk with its own matcher.
+     * So a match must not cross a delimiter; this suits rules that match within a record, like a line of a log file.
+     * The matches are collected before the stream is returned.
+     * @param text the text to search
+     * @param delimiter the end of a record
+     * @param ordered true to return the matches in order of their position, false to return them as they are found
+     * @return the matches, as StreamMatchResult holding copies of the groups but not of the text
+     */
+    public Stream<MatchResult> findAllParallel(CharSequence text, RegExp delimiter, boolean ordered) {
+        return ParallelScanner.scan(compile(), text, delimiter.compile(), ordered);
+    }
+
+    /**
+     * Find all matches in a large UTF-8 or ASCII file on all cores, see findAllParallel(CharSequence, RegExp, boolean).
+     * The chunks are memory-mapped; if this regular expression only matches ASCII characters, see CompiledRegExp.isAsciiOnly, the bytes are matched without decoding.
+     * @param path the file to search
+     * @param delimiter the end of a record, it must only match ASCII characters
+     * @param ordered true to return the matches in order of their position, false to return them as they are found
+     * @return the matches, as StreamMatchResult with positions in bytes
+     * @throws IOException if the file cannot be read
+     */
+    public Stream<MatchResult> findAllParallel(Path path, RegExp delimiter, boolean ordered) throws IOException {
+        return ParallelScanner.scan(compile(), path, delimiter.compile(), ordered);
+    }
+
+    // -------------------------
+    // BATCH
+
+    /**
+     * Find the first match in each of the texts.
+     * The regular expression is compiled once, and each thread reuses its own matcher, so this also works on a parallel stream.
+     * @param texts the texts to search
+     * @return per text, in the same order, its first match or empty if there is none
+     */
+    public <T extends CharSequence> Stream<Optional<MatchResult>> findInEach(List<T> texts) {
+        return findInEach(StreamSupport.stream(new ListSpliterator<>(texts), false));
+    }
+
+    /**
+     * See findInEach(List)
+     */
+    public <T extends CharSequence> Stream<Optional<MatchResult>> findInEach(Iterator<T> texts) {
+        return findInEach(StreamSupport.stream(Spliterators.spliteratorUnknownSize(texts, Spliterator.ORDERED), false));
+    }
+
+    /**
+     * See findInEach(List); the returned stream is parallel if the texts stream is.
+     */
+    public <T extends CharSequence> Stream<Optional<MatchResult>> findInEach(Stream<T> texts) {
+        CompiledRegExp compiledRegExp = compile();
+        return texts.map(compiledRegExp::find);
+    }
+
+    /**
+     * Keep the texts that contain a match, see findInEach(List).
+     * @param texts the texts to search
+     * @return the texts containing a match, in the same order
+     */
+    public <T extends CharSequence> Stream<T> filter(List<T> texts) {
+        return filter(StreamSupport.stream(new ListSpliterator<>(texts), false));
+    }
+
+    /**
+     * See filter(List)
+     */
+    public <T extends CharSequence> Stream<T> filter(Iterator<T> texts) {
+        return filter(StreamSupport.stream(Spliterators.spliteratorUnknownSize(texts, Spliterator.ORDERED), false));
+    }
+
+    /**
+     * See filter(List); the returned stream is parallel if the texts stream is.
+     */
+    public <T extends CharSequence> Stream<T> filter(Stream<T> texts) {
+        return texts.filter(compile().asPredicate());
+    }
+
     // -------------------------
     // READABILITY
 
@@ -490,17 +927,33 @@ public class RegExp {
     // -------------------------
     // SUPPORT
 
-    private String escape(String s) {
-        s = s.replace("\\", "\\\\");
-        s = s.replace("^", "\\^");
-        s = s.replace("$", "\\$");
-        s = s.replace(".", "\\.");
-        s = s.replace("*", "\\*");
-        s = s.replace("+", "\\+");
-        s = s.replace("(", "\\(");
-        s = s.replace("[", "\\[");
-        s = s.replace("{", "\\{");
-        return s;
+    private RegExp append(Node node) {
+        nodes.add(node);
+        regExpString = null;
+        compiled = null;
+        return this;
+    }
+
+    private RegExp quantify(RegExp regExp, Node.Quantifier.Kind kind, int min, int max) {
+        nodes.addAll(Node.quantify(regExp.nodes, kind, min, max));
+        regExpString = null;
+        compiled = null;
+        return this;
+    }
+
+    private RegExp mode(Node.Quantifier.Mode mode, String method) {
+        Node last = nodes.isEmpty() ? null : nodes.get(nodes.size() - 1);
+        if (!(last instanceof Node.Quantifier quantifier) || quantifier.mode() != Node.Quantifier.Mode.GREEDY) {
+            throw new IllegalStateException(method + "() must directly follow a quantifier, like oneOrMore(...)");
+        }
+        nodes.set(nodes.size() - 1, quantifier.withMode(mode));
+        regExpString = null;
+        compiled = null;
+        return this;
+    }
+
+    List<Node> nodes() {
+        return nodes;
     }
 
 }
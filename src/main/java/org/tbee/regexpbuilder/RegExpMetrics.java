@@ -0,0 +1,220 @@
+package org.tbee.regexpbuilder;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The runtime metrics of an instrumented RegExp, see RegExp.instrument(ruleName):
+ * the compile time, the number of find and matches calls, how many of them matched, and a histogram of their latency.
+ * The counters are LongAdders, so threads matching the same rule do not contend.
+ *
+ * The same data is available in JDK Flight Recorder recordings, tagged with the rule name:
+ * - org.tbee.regexpbuilder.Compile for every compilation,
+ * - org.tbee.regexpbuilder.Match for every find or matches call taking longer than 1 ms (configurable in the recording settings),
+ * - org.tbee.regexpbuilder.RuleStatistics periodically, with the totals per rule.
+ *
+ * Expressions that are not instrumented only pay a null check.
+ */
+public final class RegExpMetrics {
+
+    private static final int BUCKETS = 64;
+    private static final Set<RegExpMetrics> INSTRUMENTED = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+    static {
+        FlightRecorder.addPeriodicEvent(RuleStatisticsEvent.class, RegExpMetrics::emitStatistics);
+    }
+
+    private final String ruleName;
+    private final String regExpString;
+    private volatile long compileNanos = 0;
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAdder[] histogram = new LongAdder[BUCKETS];
+
+    RegExpMetrics(String ruleName, String regExpString) {
+        this.ruleName = ruleName;
+        this.regExpString = regExpString;
+        for (int i = 0; i < BUCKETS; i++) {
+            histogram[i] = new LongAdder();
+        }
+        INSTRUMENTED.add(this);
+    }
+
+    // -------------------------
+    // RECORD
+
+    void recordCompile(long nanos) {
+        compileNanos = nanos;
+    }
+
+    void recordMatch(long nanos, boolean matched) {
+        calls.increment();
+        if (matched) {
+            hits.increment();
+        }
+        totalNanos.add(nanos);
+        histogram[bucket(nanos)].increment();
+    }
+
+    /**
+     * Bucket i holds the latencies from 2^(i-1) up to 2^i nanoseconds, bucket 0 those of 0 nanoseconds
+     */
+    private static int bucket(long nanos) {
+        return nanos <= 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos));
+    }
+
+    // -------------------------
+    // READ
+
+    public String ruleName() {
+        return ruleName;
+    }
+
+    public String regExp() {
+        return regExpString;
+    }
+
+    public long compileNanos() {
+        return compileNanos;
+    }
+
+    /**
+     * @return the number of find and matches calls
+     */
+    public long calls() {
+        return calls.sum();
+    }
+
+    /**
+     * @return the number of calls that matched
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    public double hitRatio() {
+        long calls = calls();
+        return calls == 0 ? 0.0 : (double) hits() / calls;
+    }
+
+    public long totalNanos() {
+        return totalNanos.sum();
+    }
+
+    /**
+     * @return the number of calls per latency bucket: bucket i counts the calls that took from 2^(i-1) up to 2^i nanoseconds
+     */
+    public long[] latencyHistogram() {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = histogram[i].sum();
+        }
+        return counts;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the upper bound of the histogram bucket containing the percentile, so at most twice the actual latency
+     */
+    public long latencyPercentileNanos(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be between 0 and 100: " + percentile);
+        }
+        long[] counts = latencyHistogram();
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        long rank = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank && seen > 0) {
+                return i == 0 ? 0 : 1L << i;
+            }
+        }
+        return 0;
+    }
+
+    public String toString() {
+        return "RegExpMetrics[" + ruleName + ": calls=" + calls() + ", hitRatio=" + hitRatio() + ", totalNanos=" + totalNanos() + ", compileNanos=" + compileNanos + "]";
+    }
+
+    // -------------------------
+    // FLIGHT RECORDER
+
+    private static void emitStatistics() {
+        List<RegExpMetrics> instrumented;
+        synchronized (INSTRUMENTED) {
+            instrumented = new ArrayList<>(INSTRUMENTED);
+        }
+        for (RegExpMetrics metrics : instrumented) {
+            RuleStatisticsEvent event = new RuleStatisticsEvent();
+            event.ruleName = metrics.ruleName;
+            event.regExp = metrics.regExpString;
+            event.calls = metrics.calls();
+            event.hits = metrics.hits();
+            event.totalTime = metrics.totalNanos();
+            event.commit();
+        }
+    }
+
+    @Name("org.tbee.regexpbuilder.Compile")
+    @Label("RegExp Compile")
+    @Category("RegExp Builder")
+    static final class CompileEvent extends Event {
+        @Label("Rule")
+        String ruleName;
+        @Label("Regular Expression")
+        String regExp;
+    }
+
+    @Name("org.tbee.regexpbuilder.Match")
+    @Label("RegExp Match")
+    @Category("RegExp Builder")
+    @Description("A find or matches call of an instrumented RegExp")
+    @Threshold("1 ms")
+    static final class MatchEvent extends Event {
+        @Label("Rule")
+        String ruleName;
+        @Label("Operation")
+        String operation;
+        @Label("Text Length")
+        int textLength;
+        @Label("Matched")
+        boolean matched;
+    }
+
+    @Name("org.tbee.regexpbuilder.RuleStatistics")
+    @Label("RegExp Rule Statistics")
+    @Category("RegExp Builder")
+    @Description("The totals of an instrumented RegExp since it was compiled")
+    @Period("60 s")
+    static final class RuleStatisticsEvent extends Event {
+        @Label("Rule")
+        String ruleName;
+        @Label("Regular Expression")
+        String regExp;
+        @Label("Calls")
+        long calls;
+        @Label("Hits")
+        long hits;
+        @Label("Total Time")
+        @Timespan
+        long totalTime;
+    }
+}
@@ -0,0 +1,179 @@
+package org.tbee.regexpbuilder;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Shares one CompiledRegExp between all RegExps that are equal, so building the same expression many times does not compile it many times.
+ * RegExp.compile() uses the global registry, so this is automatic; a separate registry can be created to isolate, for example, a tenant.
+ *
+ * The compiled expressions are held by soft references, so the garbage collector can reclaim them under memory pressure,
+ * and at most maxSize are held, evicting the least recently used one.
+ * A registry is thread-safe.
+ */
+public final class RegExpRegistry {
+
+    private static final int DEFAULT_MAX_SIZE = 4096;
+    private static final RegExpRegistry GLOBAL = new RegExpRegistry(DEFAULT_MAX_SIZE);
+
+    private final Map<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true); // in access order, for LRU
+    private final ReferenceQueue<CompiledRegExp> cleared = new ReferenceQueue<>();
+    private int maxSize;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * @param maxSize the maximum number of compiled expressions to hold
+     */
+    public RegExpRegistry(int maxSize) {
+        setMaxSize(maxSize);
+    }
+
+    /**
+     * @return the registry used by RegExp.compile()
+     */
+    public static RegExpRegistry global() {
+        return GLOBAL;
+    }
+
+    /**
+     * @param maxSize the maximum number of compiled expressions to hold, the least recently used ones are evicted when this is lowered
+     */
+    public synchronized void setMaxSize(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be at least 1: " + maxSize);
+        }
+        this.maxSize = maxSize;
+        evictOverflow();
+    }
+
+    public synchronized int getMaxSize() {
+        return maxSize;
+    }
+
+    // -------------------------
+    // COMPILE
+
+    /**
+     * @param regExp the expression to compile
+     * @return the shared compiled expression, see RegExp.compile()
+     */
+    public CompiledRegExp compile(RegExp regExp) {
+        return regExp.compile(regExp.backend(), this);
+    }
+
+    /**
+     * @param regExp the expression to compile
+     * @param backend the engine to use
+     * @return the shared compiled expression, see RegExp.compile(Backend)
+     */
+    public CompiledRegExp compile(RegExp regExp, Backend backend) {
+        return regExp.compile(backend, this);
+    }
+
+    /**
+     * The compiler runs outside the lock, so a slow compilation does not block the other threads.
+     * If two threads compile the same expression at the same time, the first one to finish is shared.
+     */
+    CompiledRegExp intern(String regExpString, Map<String, Integer> groupNameToIdx, Backend backend, String ruleName, Supplier<CompiledRegExp> compiler) {
+        Key key = new Key(regExpString, Map.copyOf(groupNameToIdx), backend, ruleName);
+        synchronized (this) {
+            CompiledRegExp compiledRegExp = get(key);
+            if (compiledRegExp != null) {
+                hits++;
+                return compiledRegExp;
+            }
+            misses++;
+        }
+        CompiledRegExp compiledRegExp = compiler.get();
+        synchronized (this) {
+            CompiledRegExp raced = get(key);
+            if (raced != null) {
+                return raced;
+            }
+            entries.put(key, new Entry(key, compiledRegExp, cleared));
+            evictOverflow();
+            return compiledRegExp;
+        }
+    }
+
+    private CompiledRegExp get(Key key) {
+        removeCleared();
+        Entry entry = entries.get(key);
+        return entry == null ? null : entry.get();
+    }
+
+    /**
+     * The garbage collector cleared these, count them as evicted
+     */
+    private void removeCleared() {
+        for (Object reference = cleared.poll(); reference != null; reference = cleared.poll()) {
+            Entry entry = (Entry) reference;
+            if (entries.get(entry.key) == entry) {
+                entries.remove(entry.key);
+                evictions++;
+            }
+        }
+    }
+
+    private void evictOverflow() {
+        var iterator = entries.values().iterator();
+        while (entries.size() > maxSize) {
+            iterator.next();
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    // -------------------------
+    // STATISTICS
+
+    /**
+     * @param hits the number of compilations that were served from the registry
+     * @param misses the number of compilations that were not, and thus compiled
+     * @param evictions the number of compiled expressions removed because the registry was full or memory was low
+     * @param size the number of compiled expressions held
+     */
+    public record Statistics(long hits, long misses, long evictions, int size) {
+        public double hitRate() {
+            return hits + misses == 0 ? 0.0 : (double) hits / (hits + misses);
+        }
+    }
+
+    public synchronized Statistics statistics() {
+        removeCleared();
+        return new Statistics(hits, misses, evictions, entries.size());
+    }
+
+    /**
+     * Remove all compiled expressions and reset the statistics
+     */
+    public synchronized void clear() {
+        entries.clear();
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+    }
+
+    // -------------------------
+    // SUPPORT
+
+    /**
+     * The canonical form of a RegExp: equal keys compile to equal CompiledRegExps.
+     */
+    private record Key(String regExpString, Map<String, Integer> groupNameToIdx, Backend backend, String ruleName) {
+    }
+
+    private static final class Entry extends SoftReference<CompiledRegExp> {
+        private final Key key;
+
+        Entry(Key key, CompiledRegExp compiledRegExp, ReferenceQueue<CompiledRegExp> queue) {
+            super(compiledRegExp, queue);
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package org.tbee.regexpbuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.MatchResult;
+
+/**
+ * Matches many RegExps, called rules, against one text.
+ * The literal texts that the rules require are searched for in a single pass over the text,
+ * and only the rules whose literal is present (or that do not require any literal) are actually matched.
+ *
+ * <pre>{@code
+ * RegExpSet rules = RegExpSet.of()
+ *         .add("login", RegExp.of().text("login user=").group("user", oneOrMore(word())))
+ *         .add("logout", RegExp.of().text("logout user=").group("user", oneOrMore(word())));
+ * Map<String, MatchResult> matches = rules.find(line);
+ * }</pre>
+ */
+public class RegExpSet {
+
+    private final Map<String, RegExp> rules = new LinkedHashMap<>();
+    private volatile Compiled compiled = null; // compiled lazily, cleared whenever a rule is added
+
+    // -------------------------
+    // FACTORY
+
+    public static RegExpSet of() {
+        return new RegExpSet();
+    }
+
+    /**
+     * @param id the id of the rule, used to report a match
+     * @param regExp the rule, changes made to it after the first find are not picked up
+     * @return
+     */
+    public RegExpSet add(String id, RegExp regExp) {
+        if (rules.containsKey(id)) {
+            throw new RuntimeException("Rule '" + id + "' already exists");
+        }
+        rules.put(id, regExp);
+        compiled = null;
+        return this;
+    }
+
+    public RegExp get(String id) {
+        return rules.get(id);
+    }
+
+    public int size() {
+        return rules.size();
+    }
+
+    // -------------------------
+    // MATCH
+
+    /**
+     * Find the first match of every rule in the text.
+     * @param text the text to search
+     * @return the matches per rule id, in the order the rules were added; rules that do not match are absent
+     */
+    public Map<String, MatchResult> find(CharSequence text) {
+        return compile().find(text);
+    }
+
+    private Compiled compile() {
+        Compiled compiled = this.compiled;
+        if (compiled == null) {
+            compiled = new Compiled(rules);
+            this.compiled = compiled;
+        }
+        return compiled;
+    }
+
+    // -------------------------
+    // SUPPORT
+
+    /**
+     * The immutable, compiled state of the rules.
+     */
+    private static class Compiled {
+        private final String[] ids;
+        private final CompiledRegExp[] compiledRegExps;
+        private final int[] unfiltered; // the rules that do not require a literal
+        private final int[][] keywordToRules;
+        private final AhoCorasick ahoCorasick;
+
+        Compiled(Map<String, RegExp> rules) {
+            ids = rules.keySet().toArray(new String[0]);
+            compiledRegExps = new CompiledRegExp[ids.length];
+
+            List<Integer> unfilteredList = new ArrayList<>();
+            Map<String, List<Integer>> literalToRules = new LinkedHashMap<>();
+            for (int i = 0; i < ids.length; i++) {
+                compiledRegExps[i] = rules.get(ids[i]).compile();
+                Prefilter prefilter = compiledRegExps[i].prefilter();
+                String literal = prefilter.prefix() != null ? prefilter.prefix() : prefilter.required();
+                if (literal == null) {
+                    unfilteredList.add(i);
+                }
+                else {
+                    literalToRules.computeIfAbsent(literal, k -> new ArrayList<>()).add(i);
+                }
+            }
+            unfiltered = unfilteredList.stream().mapToInt(Integer::intValue).toArray();
+            keywordToRules = literalToRules.values().stream()
+                    .map(l -> l.stream().mapToInt(Integer::intValue).toArray())
+                    .toArray(int[][]::new);
+            ahoCorasick = literalToRules.isEmpty() ? null : new AhoCorasick(literalToRules.keySet().toArray(new String[0]));
+        }
+
+        Map<String, MatchResult> find(CharSequence text) {
+            boolean[] candidates = new boolean[ids.length];
+            for (int rule : unfiltered) {
+                candidates[rule] = true;
+            }
+            if (ahoCorasick != null) {
+                boolean[] present = new boolean[ahoCorasick.keywordCount()];
+                if (ahoCorasick.markPresent(text, present) > 0) {
+                    for (int keyword = 0; keyword < present.length; keyword++) {
+                        if (present[keyword]) {
+                            for (int rule : keywordToRules[keyword]) {
+                                candidates[rule] = true;
+                            }
+                        }
+                    }
+                }
+            }
+
+            Map<String, MatchResult> matches = null;
+            for (int rule = 0; rule < ids.length; rule++) {
+                if (candidates[rule]) {
+                    Optional<MatchResult> matchResult = compiledRegExps[rule].find(text);
+                    if (matchResult.isPresent()) {
+                        if (matches == null) {
+                            matches = new LinkedHashMap<>();
+                        }
+                        matches.put(ids[rule], matchResult.get());
+                    }
+                }
+            }
+            return matches == null ? Collections.emptyMap() : matches;
+        }
+    }
+}
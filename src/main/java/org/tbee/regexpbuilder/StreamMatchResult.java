@@ -0,0 +1,96 @@
+package org.tbee.regexpbuilder;
+
+import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
+
+/**
+ * A match found in a stream of text, see RegExp.findAll(Reader).
+ * The texts of the groups are copied out of the window, so the result stays valid after the stream has moved on.
+ * Positions are counted in chars from the start of the stream, and can exceed the range of an int for large inputs:
+ * start() and end() then throw an ArithmeticException, while startPosition() and endPosition() keep working.
+ */
+public final class StreamMatchResult implements MatchResult {
+
+    private final long[] positions;
+    private final String[] groups;
+
+    StreamMatchResult(long[] positions, String[] groups) {
+        this.positions = positions;
+        this.groups = groups;
+    }
+
+    StreamMatchResult(Matcher matcher, long windowStart) {
+        int groupCount = matcher.groupCount();
+        positions = new long[2 * (groupCount + 1)];
+        groups = new String[groupCount + 1];
+        for (int group = 0; group <= groupCount; group++) {
+            int start = matcher.start(group);
+            positions[2 * group] = start < 0 ? -1 : windowStart + start;
+            positions[2 * group + 1] = start < 0 ? -1 : windowStart + matcher.end(group);
+            groups[group] = matcher.group(group);
+        }
+    }
+
+    /**
+     * @return the position of the first char of the group in the stream, -1 if the group did not participate in the match
+     */
+    public long startPosition(int group) {
+        checkGroup(group);
+        return positions[2 * group];
+    }
+
+    public long startPosition() {
+        return startPosition(0);
+    }
+
+    /**
+     * @return the position after the last char of the group in the stream, -1 if the group did not participate in the match
+     */
+    public long endPosition(int group) {
+        checkGroup(group);
+        return positions[2 * group + 1];
+    }
+
+    public long endPosition() {
+        return endPosition(0);
+    }
+
+    public int start() {
+        return start(0);
+    }
+
+    public int start(int group) {
+        return Math.toIntExact(startPosition(group));
+    }
+
+    public int end() {
+        return end(0);
+    }
+
+    public int end(int group) {
+        return Math.toIntExact(endPosition(group));
+    }
+
+    public String group() {
+        return group(0);
+    }
+
+    public String group(int group) {
+        checkGroup(group);
+        return groups[group];
+    }
+
+    public int groupCount() {
+        return groups.length - 1;
+    }
+
+    private void checkGroup(int group) {
+        if (group < 0 || group >= groups.length) {
+            throw new IndexOutOfBoundsException("No group " + group);
+        }
+    }
+
+    public String toString() {
+        return "StreamMatchResult[" + startPosition() + "-" + endPosition() + ": " + group() + "]";
+    }
+}
@@ -0,0 +1,146 @@
+package org.tbee.regexpbuilder;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the matches in a Reader, holding only a window of the text in memory.
+ * The window slides forward as matches are found; the matcher's hitEnd() tells when more input could change the result,
+ * in which case the window is filled further (and grows if needed) before the match is reported.
+ * So a match, or a failed attempt that may still become one, must fit in the maximum window.
+ */
+final class StreamMatcher implements Iterator<MatchResult> {
+
+    static final int INITIAL_WINDOW = 1 << 16;
+    static final int MAX_WINDOW = 1 << 24;
+
+    private final Reader reader;
+    private final Matcher matcher;
+    private final int maxWindow;
+    private char[] window;
+    private int length = 0;
+    private long windowStart = 0; // the position of window[0] in the stream
+    private int from = 0; // where the next search starts in the window
+    private boolean endOfInput = false;
+    private MatchResult next = null;
+    private boolean done = false;
+
+    StreamMatcher(Pattern pattern, Reader reader) {
+        this(pattern, reader, INITIAL_WINDOW, MAX_WINDOW);
+    }
+
+    StreamMatcher(Pattern pattern, Reader reader, int initialWindow, int maxWindow) {
+        this.reader = reader;
+        this.maxWindow = maxWindow;
+        this.window = new char[initialWindow];
+        this.matcher = pattern.matcher("");
+        // the char before the window start is kept for \b and lookbehind, and ^ must not match at the start of the window
+        matcher.useTransparentBounds(true);
+        matcher.useAnchoringBounds(false);
+    }
+
+    public boolean hasNext() {
+        if (next == null && !done) {
+            next = advance();
+            done = next == null;
+        }
+        return next != null;
+    }
+
+    public MatchResult next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        MatchResult result = next;
+        next = null;
+        return result;
+    }
+
+    private MatchResult advance() {
+        while (true) {
+            if (from > length) {
+                if (endOfInput) {
+                    return null;
+                }
+                fill();
+                continue;
+            }
+            matcher.reset(CharBuffer.wrap(window, 0, length));
+            matcher.region(from, length);
+            boolean found = matcher.find();
+            if (matcher.hitEnd() && !endOfInput) {
+                if (!found && length - from > window.length / 2) {
+                    skipDeadStarts();
+                }
+                fill();
+                continue;
+            }
+            if (!found) {
+                if (endOfInput) {
+                    return null;
+                }
+                // no match can start in the window, not even with more input
+                from = length;
+                fill();
+                continue;
+            }
+            MatchResult result = new StreamMatchResult(matcher, windowStart);
+            // like Matcher.find(), do not match the empty string at the same position twice
+            from = matcher.end() == matcher.start() ? matcher.end() + 1 : matcher.end();
+            return result;
+        }
+    }
+
+    /**
+     * The search failed, but an attempt reached the end of the window, so that attempt may still match with more input.
+     * Usually only the attempts close to the end are still alive; move past the others, so their text can be dropped instead of growing the window.
+     */
+    private void skipDeadStarts() {
+        for (int start = from; start < length; start++) {
+            matcher.region(start, length);
+            if (matcher.lookingAt() || matcher.hitEnd()) {
+                return;
+            }
+            from = start + 1;
+        }
+    }
+
+    /**
+     * Drop the text before the next search (except one char of context) and read more input.
+     */
+    private void fill() {
+        int drop = Math.max(0, Math.min(from, length) - 1);
+        if (drop > 0) {
+            System.arraycopy(window, drop, window, 0, length - drop);
+            length -= drop;
+            from -= drop;
+            windowStart += drop;
+        }
+        if (window.length - length < 2) { // a surrogate pair needs two chars
+            if (window.length >= maxWindow) {
+                throw new IllegalStateException("A match does not fit in the maximum window of " + maxWindow + " characters");
+            }
+            window = Arrays.copyOf(window, Math.min(window.length * 2, maxWindow));
+        }
+        try {
+            int read = reader.read(window, length, window.length - length);
+            if (read < 0) {
+                endOfInput = true;
+            }
+            else {
+                length += read;
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
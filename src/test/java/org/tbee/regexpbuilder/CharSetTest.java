@@ -0,0 +1,103 @@
+package org.tbee.regexpbuilder;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.regex.Pattern;
+
+import static org.tbee.regexpbuilder.RE.*;
+
+public class CharSetTest {
+
+    @Test
+    public void algebraTest() {
+        CharSet hex = CharSet.range('0', '9').union(CharSet.range('a', 'f')).union(CharSet.range('A', 'F'));
+        Assertions.assertEquals("[0-9A-Fa-f]", hex.toString());
+        Assertions.assertEquals("[a-f]", hex.intersect(CharSet.range('a', 'z')).toString());
+        Assertions.assertEquals("[1-9A-F]", hex.subtract(CharSet.range('a', 'z')).subtract(CharSet.of("0")).toString());
+        Assertions.assertEquals("[^0-9A-Fa-f]", hex.negate().toString());
+        Assertions.assertEquals(hex, hex.negate().negate());
+        Assertions.assertEquals(CharSet.range('a', 'e'), CharSet.of("edcba"));
+        Assertions.assertEquals(CharSet.range('a', 'z'), CharSet.range('a', 'm').union(CharSet.range('n', 'z')));
+        Assertions.assertTrue(CharSet.range('a', 'c').intersect(CharSet.range('x', 'z')).isEmpty());
+        Assertions.assertEquals(CharSet.all(), CharSet.empty().negate());
+        Assertions.assertTrue(CharSet.word().containsAll(CharSet.digit()));
+        Assertions.assertTrue(hex.intersects(CharSet.range('f', 'z')));
+        Assertions.assertFalse(hex.intersects(CharSet.range('g', 'z')));
+        Assertions.assertFalse(CharSet.all().intersects(CharSet.empty()));
+    }
+
+    @Test
+    public void containsTest() {
+        CharSet set = CharSet.of("az").union(CharSet.range(0x1F600, 0x1F64F)).union(CharSet.of('\u00E9'));
+        Assertions.assertTrue(set.contains('a'));
+        Assertions.assertTrue(set.contains('z'));
+        Assertions.assertFalse(set.contains('b'));
+        Assertions.assertTrue(set.contains('\u00E9'));
+        Assertions.assertFalse(set.contains('\u00E8'));
+        Assertions.assertTrue(set.contains(0x1F600));
+        Assertions.assertTrue(set.contains(0x1F620));
+        Assertions.assertTrue(set.contains(0x1F64F));
+        Assertions.assertFalse(set.contains(0x1F650));
+        Assertions.assertFalse(set.isAsciiOnly());
+        Assertions.assertTrue(CharSet.word().isAsciiOnly());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> CharSet.range('z', 'a'));
+    }
+
+    @Test
+    public void renderTest() {
+        Assertions.assertEquals("[\\w/:]", oneOf(word().or().text(":/")).toString());
+        Assertions.assertEquals("[\\w]", oneOf(word().or().text("_a")).toString());
+        Assertions.assertEquals("[^\\w]", notOneOf(word()).toString());
+        Assertions.assertEquals("[^\\w]", oneOf(nonWord()).toString());
+        Assertions.assertEquals("[a-z]", range("a", "m", "k", "z").toString());
+        Assertions.assertEquals("[a-z]", range('a', 'z').toString());
+        Assertions.assertEquals("[.]", oneOf(anyChar()).toString());
+        Assertions.assertEquals("[^\\x{0}-\\x{10FFFF}]", oneOf(CharSet.empty()).toString());
+        Assertions.assertEquals("[\\x{9}\\x{A}]", oneOf('\t', '\n').toString());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> oneOf(group(digit())));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> oneOf(RegExp.of().doubleQuote())); // a lone backslash is no character
+        Assertions.assertThrows(IllegalArgumentException.class, () -> range("ab", "c"));
+    }
+
+    @Test
+    public void renderMatchesSetTest() {
+        CharSet[] sets = {
+                CharSet.word().union(CharSet.of("-.")),
+                CharSet.whitespace().negate(),
+                CharSet.range(0x1F600, 0x1F64F).union(CharSet.of("^]\\")),
+                CharSet.digit().negate().intersect(CharSet.range(0, 0xFF)),
+                CharSet.all().subtract(CharSet.of('\n')),
+                CharSet.empty(),
+        };
+        for (CharSet set : sets) {
+            Pattern pattern = Pattern.compile(set.toString());
+            for (int c = 0; c < 0x300; c++) {
+                Assertions.assertEquals(set.contains(c), pattern.matcher(Character.toString(c)).matches(), set + " " + c);
+            }
+            for (int c = 0x1F5F0; c < 0x1F660; c++) {
+                Assertions.assertEquals(set.contains(c), pattern.matcher(Character.toString(c)).matches(), set + " " + c);
+            }
+        }
+    }
+
+    @Test
+    public void shorthandTest() {
+        RegExp[] shorthands = {anyChar(), tab(), RegExp.of().carriageReturn(), RegExp.of().lineFeed(), digit(), nonDigit(), whitespace(), nonWhitespace(), word(), nonWord()};
+        for (RegExp shorthand : shorthands) {
+            CharSet set = CharSet.of((Node.Shorthand) shorthand.nodes().get(0));
+            Pattern pattern = Pattern.compile(shorthand.toString());
+            for (int c = 0; c < 0x3000; c++) {
+                Assertions.assertEquals(pattern.matcher(Character.toString(c)).matches(), set.contains(c), shorthand + " " + c);
+            }
+        }
+        Assertions.assertNull(CharSet.of((Node.Shorthand) RegExp.of().doubleQuote().nodes().get(0)));
+    }
+
+    @Test
+    public void codePointRangeTest() {
+        RegExp regExp = RegExp.of().oneOrMore(range(0x1F600, 0x1F64F));
+        Assertions.assertTrue(regExp.toMatcher("\uD83D\uDE00\uD83D\uDE4F").matches());
+        Assertions.assertFalse(regExp.toMatcher("a").matches());
+    }
+}
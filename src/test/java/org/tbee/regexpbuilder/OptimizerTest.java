@@ -0,0 +1,149 @@
+package org.tbee.regexpbuilder;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import static org.tbee.regexpbuilder.RE.*;
+
+public class OptimizerTest {
+
+    @Test
+    public void rewriteTest() {
+        Assertions.assertEquals("\\d{3}", optimized(RegExp.of().digit().digit().digit()));
+        Assertions.assertEquals("\\d\\d", optimized(RegExp.of().digit().digit()));
+        Assertions.assertEquals("\\d{3,}", optimized(RegExp.of().digit().digit().oneOrMore(digit())));
+        Assertions.assertEquals("a+", optimized(RegExp.of().text("a").zeroOrMore("a")));
+        Assertions.assertEquals("x", optimized(RegExp.of().occurs(1, "x")));
+        Assertions.assertEquals("x{2}", optimized(RegExp.of().occursBetween(2, 2, "x")));
+        Assertions.assertEquals("a-b", optimized(RegExp.of().text("a").oneOf("-").text("b")));
+        Assertions.assertEquals("\\d\\w", optimized(RegExp.of().range("0", "9").oneOf(word())));
+        Assertions.assertEquals("abc", optimized(RegExp.of().text("a").nonCapturingGroup(text("b")).text("c")));
+        Assertions.assertEquals("a*", optimized(RegExp.of().optional(nonCapturingGroup(zeroOrMore("a")))));
+        Assertions.assertEquals("a*", optimized(RegExp.of().oneOrMore(nonCapturingGroup(optional("a")))));
+        Assertions.assertEquals("a+", optimized(RegExp.of().oneOrMore(nonCapturingGroup(oneOrMore("a")))));
+        Assertions.assertEquals("a{6}", optimized(RegExp.of().occurs(2, nonCapturingGroup(occurs(3, "a")))));
+        Assertions.assertEquals("(?:ab)+", optimized(RegExp.of().oneOrMore(nonCapturingGroup(nonCapturingGroup(text("ab"))))));
+    }
+
+    @Test
+    public void groupsAreKeptTest() {
+        // an alternation directly in a non-capturing group does not capture, so the group must stay
+        Assertions.assertEquals("(?:a|b\\d)", optimized(RegExp.of().nonCapturingGroup(anyOf(text("a"), text("b").digit()))));
+        // merging the quantifiers would change what the group captures
+        Assertions.assertEquals("(?:(a)+)*", optimized(RegExp.of().zeroOrMore(nonCapturingGroup(oneOrMore(group("a"))))));
+        Assertions.assertEquals("(\\d{3})\\1", optimized(RegExp.of().group("x", RegExp.of().digit().digit().digit()).referToGroup("x")));
+    }
+
+    @Test
+    public void compileTest() {
+        RegExp regExp = RegExp.of().group("year", RegExp.of().digit().digit().digit().digit()).text("-").group(occursBetween(2, 2, digit()));
+        Assertions.assertEquals("(\\d\\d\\d\\d)-(\\d{2,2})", regExp.toString());
+        Assertions.assertEquals("(\\d{4})-(\\d{2})", regExp.toPattern().pattern());
+        Assertions.assertEquals("2024", regExp.match("2024-06").orElseThrow().group(regExp.indexOf("year")));
+        Assertions.assertEquals("06", regExp.match("2024-06").orElseThrow().group(2));
+    }
+
+    /**
+     * Generate random expressions, and compare the matches of the original and the optimized form on random texts.
+     */
+    @Test
+    public void equivalenceTest() {
+        Random random = new Random(42);
+        int rewritten = 0;
+        for (int i = 0; i < 2000; i++) {
+            RegExp regExp = generate(random, 3);
+            String original = regExp.toString();
+            String optimized = optimized(regExp);
+            if (original.equals(optimized) || !isValid(original)) {
+                continue;
+            }
+            rewritten++;
+            Assertions.assertTrue(optimized.length() <= original.length(), original + " -> " + optimized);
+            Pattern originalPattern = Pattern.compile(original);
+            Pattern optimizedPattern = Pattern.compile(optimized);
+            Assertions.assertEquals(originalPattern.matcher("").groupCount(), optimizedPattern.matcher("").groupCount(), original + " -> " + optimized);
+            for (int j = 0; j < 50; j++) {
+                String text = randomText(random);
+                Assertions.assertEquals(matches(originalPattern, text), matches(optimizedPattern, text), original + " -> " + optimized + " on '" + text + "'");
+            }
+        }
+        Assertions.assertTrue(rewritten > 500, "only " + rewritten + " expressions were rewritten");
+    }
+
+    // -------------------------
+    // SUPPORT
+
+    private static String optimized(RegExp regExp) {
+        return Node.render(Optimizer.optimize(regExp.nodes()));
+    }
+
+    /**
+     * Some combinations of builder calls render an invalid expression, like a quantifier on {2}
+     */
+    private static boolean isValid(String regExp) {
+        try {
+            Pattern.compile(regExp);
+            return true;
+        }
+        catch (PatternSyntaxException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return all matches with their groups, and whether the whole text matches
+     */
+    private static List<Object> matches(Pattern pattern, String text) {
+        List<Object> result = new ArrayList<>();
+        Matcher matcher = pattern.matcher(text);
+        while (matcher.find()) {
+            for (int group = 0; group <= matcher.groupCount(); group++) {
+                // the JDK may leave a group that did not participate with the position of an earlier attempt, depending on how the loop around it was compiled
+                boolean participated = matcher.start(group) >= matcher.start() && matcher.end(group) <= matcher.end();
+                result.add(participated ? matcher.start(group) + "-" + matcher.end(group) : "-");
+            }
+        }
+        result.add(pattern.matcher(text).matches());
+        return result;
+    }
+
+    private static String randomText(Random random) {
+        String alphabet = "aab1-";
+        StringBuilder sb = new StringBuilder();
+        for (int i = random.nextInt(10); i > 0; i--) {
+            sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return sb.toString();
+    }
+
+    private static RegExp generate(Random random, int depth) {
+        RegExp regExp = RegExp.of();
+        for (int i = 1 + random.nextInt(3); i > 0; i--) {
+            int choice = random.nextInt(depth > 0 ? 14 : 6);
+            switch (choice) {
+                case 0 -> regExp.text(random.nextBoolean() ? "a" : "ab");
+                case 1 -> regExp.digit();
+                case 2 -> regExp.oneOf(random.nextBoolean() ? "a" : "ab");
+                case 3 -> regExp.range('0', '9');
+                case 4 -> regExp.notOneOf("b");
+                case 5 -> regExp.text("-");
+                case 6 -> regExp.group(generate(random, depth - 1));
+                case 7 -> regExp.nonCapturingGroup(generate(random, depth - 1));
+                case 8 -> regExp.optional(nonCapturingGroup(generate(random, depth - 1)));
+                case 9 -> regExp.zeroOrMore(random.nextBoolean() ? generate(random, depth - 1) : nonCapturingGroup(generate(random, depth - 1)));
+                case 10 -> regExp.oneOrMore(random.nextBoolean() ? generate(random, depth - 1) : nonCapturingGroup(generate(random, depth - 1)));
+                case 11 -> regExp.occurs(random.nextInt(3), generate(random, depth - 1));
+                case 12 -> regExp.occursBetween(random.nextInt(2), 1 + random.nextInt(2), nonCapturingGroup(generate(random, depth - 1)));
+                default -> regExp.anyOf(generate(random, depth - 1), generate(random, depth - 1));
+            }
+        }
+        return regExp;
+    }
+}
@@ -0,0 +1,47 @@
+package org.tbee.regexpbuilder;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.regex.Matcher;
+
+import static org.tbee.regexpbuilder.RE.*;
+
+public class PrecompiledTest {
+
+    static final String SEPARATOR = "-";
+    static final RegExp QUOTE = RegExp.of().text("\"");
+
+    @Precompiled
+    static final RegExp DATE = RegExp.of()
+            .group("year", occurs(4, digit()))
+            .text(SEPARATOR)
+            .group("month", occurs(2, digit()));
+
+    @Precompiled
+    static final RegExp LOG_LINE = RegExp.of()
+            .startOfLine()
+            .group("logDate", oneOrMore(oneOf("0123456789" + SEPARATOR)))
+            .text(" ").nonCapturingGroup(QUOTE)
+            .group("method", oneOrMore(range("A", "Z")))
+            .text("\\").nonCapturingGroup(QUOTE).text(" ")
+            .group("status", oneOrMore(digit()))
+            .optional(text(" é"))
+            .endOfLine()
+            .backend(Backend.JDK);
+
+    @Test
+    public void precompiledTest() {
+        Assertions.assertEquals(DATE.toPattern().pattern(), PrecompiledTestPrecompiled.DATE.REGEX);
+        Assertions.assertEquals(DATE.indexOf("year"), PrecompiledTestPrecompiled.DATE.GROUP_YEAR);
+        Assertions.assertEquals(DATE.indexOf("month"), PrecompiledTestPrecompiled.DATE.GROUP_MONTH);
+
+        Assertions.assertEquals(LOG_LINE.toPattern().pattern(), PrecompiledTestPrecompiled.LOG_LINE.REGEX);
+        Assertions.assertEquals(LOG_LINE.indexOf("logDate"), PrecompiledTestPrecompiled.LOG_LINE.GROUP_LOG_DATE);
+        Assertions.assertEquals(LOG_LINE.indexOf("status"), PrecompiledTestPrecompiled.LOG_LINE.GROUP_STATUS);
+
+        Matcher matcher = PrecompiledTestPrecompiled.LOG_LINE.PATTERN.matcher("2024-06 \"POST\\\" 201 é");
+        Assertions.assertTrue(matcher.matches());
+        Assertions.assertEquals("201", matcher.group(PrecompiledTestPrecompiled.LOG_LINE.GROUP_STATUS));
+    }
+}
@@ -0,0 +1,46 @@
+package org.tbee.regexpbuilder;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import static org.tbee.regexpbuilder.RE.*;
+
+public class RegExpRegistryTest {
+
+    @Test
+    public void equalsTest() {
+        RegExp hex = RegExp.of().oneOrMore(range("a", "f", "A", "F", "0", "9"));
+        Assertions.assertEquals(hex, RegExp.of().oneOrMore(range("a", "f", "A", "F", "0", "9")));
+        Assertions.assertEquals(hex.hashCode(), RegExp.of().oneOrMore(range("a", "f", "A", "F", "0", "9")).hashCode());
+        Assertions.assertEquals(RegExp.of().text("ab"), RegExp.of().text("a").text("b"));
+        Assertions.assertNotEquals(hex, RegExp.of().oneOrMore(range("a", "f", "0", "9")));
+        Assertions.assertNotEquals(RegExp.of().group("a", digit()), RegExp.of().group("b", digit()));
+        Assertions.assertNotEquals(RegExp.of().digit(), RegExp.of().digit().backend(Backend.JDK));
+    }
+
+    @Test
+    public void registryTest() {
+        RegExpRegistry registry = new RegExpRegistry(2);
+        CompiledRegExp hex = registry.compile(RegExp.of().oneOrMore(range("a", "f", "0", "9")));
+        Assertions.assertSame(hex, registry.compile(RegExp.of().oneOrMore(range("a", "f", "0", "9"))));
+        Assertions.assertNotSame(hex, registry.compile(RegExp.of().oneOrMore(range("a", "f", "0", "9")), Backend.JDK));
+        Assertions.assertEquals(new RegExpRegistry.Statistics(1, 2, 0, 2), registry.statistics());
+
+        // hex is the least recently used
+        registry.compile(RegExp.of().oneOrMore(range("a", "f", "0", "9")), Backend.JDK);
+        registry.compile(RegExp.of().oneOrMore(digit()));
+        Assertions.assertEquals(new RegExpRegistry.Statistics(2, 3, 1, 2), registry.statistics());
+        Assertions.assertNotSame(hex, registry.compile(RegExp.of().oneOrMore(range("a", "f", "0", "9"))));
+        Assertions.assertEquals(2.0 / 6, registry.statistics().hitRate());
+
+        registry.setMaxSize(1);
+        Assertions.assertEquals(1, registry.statistics().size());
+        registry.clear();
+        Assertions.assertEquals(new RegExpRegistry.Statistics(0, 0, 0, 0), registry.statistics());
+    }
+
+    @Test
+    public void compileIsSharedTest() {
+        Assertions.assertSame(RegExp.of().text("shared").digit().compile(), RegExp.of().text("shared").digit().compile());
+    }
+}
@@ -0,0 +1,77 @@
+package org.tbee.regexpbuilder;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.regex.MatchResult;
+
+import static org.tbee.regexpbuilder.RE.*;
+
+public class RegExpSetTest {
+
+    @Test
+    public void findTest() {
+        RegExpSet regExpSet = RegExpSet.of()
+                .add("login", RegExp.of().text("login user=").group("user", oneOrMore(word())))
+                .add("logout", RegExp.of().text("logout user=").group("user", oneOrMore(word())))
+                .add("number", RegExp.of().group("n", oneOrMore(digit())))
+                .add("error", RegExp.of().oneOrMore(word()).text(" failed"));
+
+        Map<String, MatchResult> matches = regExpSet.find("12:00 login user=tom");
+        Assertions.assertEquals(List.of("login", "number"), List.copyOf(matches.keySet()));
+        Assertions.assertEquals("tom", matches.get("login").group(regExpSet.get("login").indexOf("user")));
+        Assertions.assertEquals("12", matches.get("number").group(1));
+
+        matches = regExpSet.find("logout user=tom; backup failed");
+        Assertions.assertEquals(List.of("logout", "error"), List.copyOf(matches.keySet()));
+        Assertions.assertEquals("backup failed", matches.get("error").group());
+
+        Assertions.assertTrue(regExpSet.find("nothing to see").isEmpty());
+    }
+
+    @Test
+    public void sameLiteralTest() {
+        RegExpSet regExpSet = RegExpSet.of()
+                .add("a", RegExp.of().text("id=").oneOrMore(digit()))
+                .add("b", RegExp.of().text("id=").oneOrMore(oneOf("abc")));
+        Assertions.assertEquals(List.of("a"), List.copyOf(regExpSet.find("id=12").keySet()));
+        Assertions.assertEquals(List.of("a", "b"), List.copyOf(regExpSet.find("id=ab id=1").keySet()));
+    }
+
+    @Test
+    public void duplicateIdTest() {
+        RegExpSet regExpSet = RegExpSet.of().add("a", text("a"));
+        Assertions.assertThrows(RuntimeException.class, () -> regExpSet.add("a", text("b")));
+    }
+
+    @Test
+    public void sameAsSeparateRulesTest() {
+        Random random = new Random(1);
+        String[] words = {"ab", "abc", "bca", "cab", "b", "ca"};
+        RegExpSet regExpSet = RegExpSet.of();
+        for (int i = 0; i < words.length; i++) {
+            regExpSet.add("r" + i, RegExp.of().text(words[i]).optional(digit()));
+        }
+        regExpSet.add("digits", RegExp.of().occurs(2, digit()));
+        for (int i = 0; i < 1000; i++) {
+            StringBuilder sb = new StringBuilder();
+            for (int j = random.nextInt(12); j > 0; j--) {
+                sb.append("abc1".charAt(random.nextInt(4)));
+            }
+            String text = sb.toString();
+            Map<String, MatchResult> matches = regExpSet.find(text);
+            for (int r = 0; r <= words.length; r++) {
+                String id = r < words.length ? "r" + r : "digits";
+                Optional<MatchResult> expected = regExpSet.get(id).find(text);
+                Assertions.assertEquals(expected.isPresent(), matches.containsKey(id), id + " in " + text);
+                if (expected.isPresent()) {
+                    Assertions.assertEquals(expected.get().start(), matches.get(id).start(), id + " in " + text);
+                }
+            }
+        }
+    }
+}
@@ -2,9 +2,34 @@ package org.tbee.regexpbuilder;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.MatchResult;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
 
 import static org.tbee.regexpbuilder.RE.*;
 
@@ -30,7 +55,7 @@ public class RegExpTest {
     public void rangeLongTest() {
         RegExp regExp = RegExp.of()
                 .range("0", "9", "A", "B", "C", "D", "E", "F", "G", "H", "I", "J");
-        Assertions.assertEquals("[0-9A-BC-DE-FG-HI-J]", regExp.toString());
+        Assertions.assertEquals("[0-9A-J]", regExp.toString());
     }
 
     @Test
@@ -51,6 +76,26 @@ public class RegExpTest {
         Assertions.assertEquals(2, countMatches(regExp.toMatcher("adbec")));
     }
 
+    @Test
+    public void escapeTest() {
+        String text = "\\^$.|?*+()[]{}-&";
+        RegExp regExp = RegExp.of()
+                .text(text);
+        Assertions.assertEquals("\\\\\\^\\$\\.\\|\\?\\*\\+\\(\\)\\[\\]\\{\\}-&", regExp.toString());
+        Assertions.assertTrue(regExp.toMatcher(text).matches());
+    }
+
+    @Test
+    public void escapeInClassTest() {
+        RegExp regExp = RegExp.of()
+                .oneOf("^-]\\&$.");
+        Assertions.assertEquals("[$\\&\\-.\\\\-\\^]", regExp.toString());
+        Assertions.assertEquals(7, countMatches(regExp.toMatcher("^-]\\&$.")));
+        Assertions.assertEquals(1, countMatches(regExp.toMatcher("abc&")));
+        Assertions.assertEquals(3, countMatches(regExp.toMatcher("-x]y^")));
+        Assertions.assertEquals("[\\[-\\]]", RegExp.of().range("[", "]").toString());
+    }
+
     @Test
     public void startOfLineTest() {
         RegExp regExp = RegExp.of()
@@ -152,6 +197,258 @@ public class RegExpTest {
         Assertions.assertEquals("snake", matcher.group(regExp.indexOf("animal")));
     }
 
+    @Test
+    public void possessiveTest() {
+        RegExp regExp = RegExp.of()
+                .oneOrMore(digit()).possessive()
+                .occursBetween(2, 3, "x").possessive()
+                .zeroOrMore(anyChar()).reluctant()
+                .text("!");
+        Assertions.assertEquals("\\d++x{2,3}+.*?!", regExp.toString());
+        Assertions.assertTrue(regExp.matches("12xx!!"));
+        Assertions.assertFalse(RegExp.of().oneOrMore(digit()).possessive().digit().matches("123"));
+        Assertions.assertEquals("a", RegExp.of().oneOrMore(anyChar()).reluctant().find("ab").orElseThrow().group());
+    }
+
+    @Test
+    public void possessiveWithoutQuantifierTest() {
+        Assertions.assertThrows(IllegalStateException.class, () -> RegExp.of().digit().possessive());
+        Assertions.assertThrows(IllegalStateException.class, () -> RegExp.of().oneOrMore(digit()).reluctant().possessive());
+        Assertions.assertThrows(IllegalStateException.class, () -> RegExp.of().reluctant());
+    }
+
+    @Test
+    public void nestedQuantifierIsModeTest() {
+        RegExp reluctant = RegExp.of().optional(zeroOrMore("x"));
+        Assertions.assertEquals("x*?", reluctant.toString());
+        Node.Quantifier quantifier = (Node.Quantifier) reluctant.nodes().get(0);
+        Assertions.assertEquals(Node.Quantifier.Kind.ZERO_OR_MORE, quantifier.kind());
+        Assertions.assertEquals(Node.Quantifier.Mode.RELUCTANT, quantifier.mode());
+
+        RegExp possessive = RegExp.of().oneOrMore(occurs(2, digit()));
+        Assertions.assertEquals("\\d{2}+", possessive.toString());
+        Assertions.assertEquals(Node.Quantifier.Mode.POSSESSIVE, ((Node.Quantifier) possessive.nodes().get(0)).mode());
+
+        // a quantifier that already has a mode is quantified as a group
+        RegExp optionalReluctant = RegExp.of().optional(zeroOrMore("x").reluctant());
+        Assertions.assertEquals("(?:x*?)?", optionalReluctant.toString());
+        Assertions.assertTrue(optionalReluctant.matches("xx"));
+        RegExp oneOrMorePossessive = RegExp.of().oneOrMore(oneOrMore("x").possessive());
+        Assertions.assertEquals("(?:x++)+", oneOrMorePossessive.toString());
+        Assertions.assertTrue(oneOrMorePossessive.matches("xxx"));
+
+        // other quantifiers on a quantifier would not parse, so they are grouped as well
+        RegExp zeroOrMoreOneOrMore = RegExp.of().zeroOrMore(oneOrMore(word()));
+        Assertions.assertEquals("(?:\\w+)*", zeroOrMoreOneOrMore.toString());
+        Assertions.assertTrue(zeroOrMoreOneOrMore.matches("ab"));
+        RegExp exactlyOptional = RegExp.of().occurs(2, optional("x"));
+        Assertions.assertEquals("(?:x?){2}", exactlyOptional.toString());
+        Assertions.assertTrue(exactlyOptional.matches("x"));
+    }
+
+    @Test
+    public void nonCapturingGroupTest() {
+        RegExp regExp = RegExp.of()
+                .nonCapturingGroup(anyOf("cat", "dog"))
+                .nonCapturingGroup(text("ab").digit())
+                .group("rest", oneOrMore(word()));
+        Assertions.assertEquals("(?:cat|dog)(?:ab\\d)(\\w+)", regExp.toString());
+        MatchResult matchResult = regExp.match("dogab1xyz").orElseThrow();
+        Assertions.assertEquals(1, regExp.indexOf("rest"));
+        Assertions.assertEquals("xyz", matchResult.group(regExp.indexOf("rest")));
+    }
+
+    @Test
+    public void atomicGroupTest() {
+        RegExp regExp = RegExp.of()
+                .atomicGroup(anyOf("cat", "category"))
+                .text("!");
+        Assertions.assertEquals("(?>cat(?:egory)??)!", regExp.toString());
+        Assertions.assertTrue(regExp.matches("cat!"));
+        Assertions.assertFalse(regExp.matches("category!")); // "cat" matches first, and is not given up
+        Assertions.assertTrue(RegExp.of().atomicGroup(anyOf("category", "cat")).text("!").matches("category!"));
+        Assertions.assertFalse(RegExp.of().atomicGroup(anyOf("cat", "category")).matches("category"));
+        Assertions.assertEquals("(?>a+)b", atomicGroup(oneOrMore("a")).text("b").toString());
+    }
+
+    @Test
+    public void analyzeTest() {
+        Analysis nested = RegExp.of().zeroOrMore(group(oneOrMore(word()).optional(whitespace()))).analyze();
+        Assertions.assertEquals(Analysis.Complexity.EXPONENTIAL, nested.complexity());
+        Assertions.assertEquals("(\\w+\\s?)*", nested.findings().get(0).subexpression());
+
+        Analysis overlapping = RegExp.of().oneOrMore(nonCapturingGroup(anyOf(digit(), word()))).analyze();
+        Assertions.assertEquals(Analysis.Complexity.EXPONENTIAL, overlapping.complexity());
+
+        Analysis adjacent = RegExp.of().oneOrMore(digit()).zeroOrMore(whitespace()).oneOrMore(digit()).analyze();
+        Assertions.assertEquals(Analysis.Complexity.POLYNOMIAL, adjacent.complexity());
+        Assertions.assertEquals("\\d+...\\d+", adjacent.findings().get(0).subexpression());
+    }
+
+    @Test
+    public void analyzeBoundedAndPossessiveTest() {
+        Analysis bounded = RegExp.of().occursBetween(1, 40, group(oneOrMore(word()).optional(whitespace()))).text("!").analyze();
+        Assertions.assertEquals(Analysis.Complexity.POLYNOMIAL, bounded.complexity());
+        Assertions.assertEquals("(\\w+\\s?){1,40}", bounded.findings().get(0).subexpression());
+        Assertions.assertFalse(RegExp.of().zeroOrMore(group(occursBetween(1, 10, word()).optional(whitespace()))).analyze().isLinear());
+        Assertions.assertFalse(RegExp.of().occursBetween(1, 3, digit()).occursBetween(1, 3, digit()).analyze().isLinear());
+        Assertions.assertTrue(RegExp.of().occurs(3, digit()).occurs(3, digit()).analyze().isLinear());
+
+        // possessive quantifiers and atomic groups do not give back, but the engine still backtracks inside them
+        Assertions.assertFalse(RegExp.of().oneOrMore(nonCapturingGroup(zeroOrMore(group(oneOrMore(word()).optional(whitespace()))).text("!"))).possessive().analyze().isLinear());
+        Assertions.assertFalse(RegExp.of().atomicGroup(zeroOrMore(group(oneOrMore(word()).optional(whitespace()))).text("!")).analyze().isLinear());
+
+        // a quantifier on nothing applies to what precedes it
+        RegExp dangling = RegExp.of().group(oneOrMore("a")).zeroOrMore(RegExp.of());
+        Assertions.assertEquals("(a+)*", dangling.toString());
+        Assertions.assertFalse(dangling.analyze().isLinear());
+    }
+
+    @Test
+    public void analyzeLinearTest() {
+        Assertions.assertTrue(RegExp.of().zeroOrMore(group(oneOrMore(word()).text(","))).analyze().isLinear());
+        Assertions.assertTrue(RegExp.of().oneOrMore(digit()).text("-").oneOrMore(digit()).analyze().isLinear());
+        Assertions.assertTrue(RegExp.of().oneOrMore(digit()).oneOrMore(whitespace()).analyze().isLinear());
+        Assertions.assertTrue(RegExp.of().oneOrMore(nonCapturingGroup(anyOf("cat", "dog"))).analyze().isLinear());
+        Assertions.assertTrue(RegExp.of().zeroOrMore(atomicGroup(oneOrMore(word()).optional(whitespace()))).analyze().isLinear());
+        Assertions.assertTrue(RegExp.of().oneOrMore(digit()).possessive().oneOrMore(digit()).analyze().isLinear());
+        Assertions.assertTrue(RegExp.of().text("abc").analyze().findings().isEmpty());
+    }
+
+    @Test
+    public void strictTest() {
+        RegExp risky = RegExp.of().strict().zeroOrMore(group(oneOrMore("a")));
+        IllegalStateException exception = Assertions.assertThrows(IllegalStateException.class, () -> risky.matches("aaa"));
+        Assertions.assertTrue(exception.getMessage().contains("(a+)*"), exception.getMessage());
+        Assertions.assertEquals("(a+)*", risky.toString());
+
+        Assertions.assertTrue(RegExp.of().strict().zeroOrMore(atomicGroup(oneOrMore("a"))).matches("aaa"));
+
+        // a bounded loop divides the text over its iterations just as well
+        RegExp bounded = RegExp.of().strict().occursBetween(1, 40, group(oneOrMore(word()).optional(whitespace()))).text("!");
+        Assertions.assertThrows(IllegalStateException.class, () -> bounded.matches("a"));
+    }
+
+    @Test
+    public void dfaTest() {
+        RegExp regExp = RegExp.of()
+                .zeroOrMore(group(oneOrMore("a")))
+                .text("b");
+        CompiledRegExp compiled = regExp.compile();
+        Assertions.assertTrue(compiled.engine() instanceof DfaEngine); // AUTO, because the analyzer reports it
+        String hostile = "a".repeat(5000);
+        Assertions.assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            Assertions.assertFalse(compiled.matches(hostile));
+            Assertions.assertTrue(compiled.find(hostile).isEmpty());
+        });
+        MatchResult matchResult = compiled.find("xaab").orElseThrow();
+        Assertions.assertEquals(1, matchResult.start());
+        Assertions.assertEquals("aa", matchResult.group(1));
+
+        // java.util.regex only determines the groups in the region of the match, so it does not backtrack at the starts that fail
+        RegExp bounded = RegExp.of().occursBetween(1, 40, group(oneOrMore(word()).optional(whitespace()))).text("!");
+        CompiledRegExp boundedCompiled = bounded.compile();
+        Assertions.assertTrue(boundedCompiled.engine() instanceof DfaEngine);
+        Assertions.assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            MatchResult boundedResult = boundedCompiled.find("a".repeat(30) + "#a!").orElseThrow();
+            Assertions.assertEquals(31, boundedResult.start());
+            Assertions.assertEquals("a!", boundedResult.group());
+            Assertions.assertEquals("a", boundedResult.group(1));
+        });
+
+        Assertions.assertTrue(RegExp.of().oneOrMore(digit()).compile().engine() instanceof JdkEngine);
+        Assertions.assertTrue(RegExp.of().oneOrMore(digit()).compile(Backend.DFA).engine() instanceof DfaEngine);
+        Assertions.assertTrue(RegExp.of().zeroOrMore(group(oneOrMore("a"))).compile(Backend.JDK).engine() instanceof JdkEngine);
+        RegExp backReference = RegExp.of().group("x", oneOrMore("a")).referToGroup("x");
+        Assertions.assertTrue(backReference.compile(Backend.DFA).engine() instanceof JdkEngine);
+        Assertions.assertTrue(backReference.backend(Backend.DFA).matches("aaaa"));
+    }
+
+    @Test
+    public void dfaIsSameAsMatcherTest() {
+        List<RegExp> regExps = List.of(
+                RegExp.of().text("ab").optional("c").zeroOrMore(oneOf("abc")),
+                RegExp.of().startOfLine().oneOrMore(nonCapturingGroup(anyOf("a", "ab", "b"))).text("c").endOfLine(),
+                RegExp.of().occursBetween(2, 3, notOneOf("b")).anyChar().occurs(2, range("a", "b")),
+                RegExp.of().zeroOrMore(anyChar()).reluctant().group(occursAtLeast(2, word())).nonWordChar().endOfLine(),
+                RegExp.of().oneOrMore(whitespace()).nonWhitespace().zeroOrMore(nonDigit()).digit(),
+                // the DFA must find the same match as a backtracking engine, which depends on the order of the alternatives and the quantifier modes
+                RegExp.of().anyOf("abcc", "c", "bc"),
+                RegExp.of().group(oneOrMore(anyChar()).reluctant()).group(oneOrMore(oneOf("bc"))),
+                RegExp.of().group(optional("a").reluctant()).group(zeroOrMore(word()).reluctant()).text("b"),
+                RegExp.of().group(occursBetween(1, 3, nonCapturingGroup(anyOf("a", "ab")))).group(zeroOrMore(oneOf("ab"))),
+                RegExp.of().group(zeroOrMore(whitespace())).endOfLine(),
+                RegExp.of().group(oneOrMore(oneOf("a1"))).group(zeroOrMore(anyChar())).endOfLine(),
+                RegExp.of().optional(group(zeroOrMore("a"))).text("b"));
+        // java.util.regex ends a loop at an iteration that matches empty, these are left to it
+        List<RegExp> emptyIterations = List.of(
+                RegExp.of().anyChar().oneOf("ab").zeroOrMore(nonCapturingGroup(zeroOrMore(whitespace()).reluctant())),
+                RegExp.of().zeroOrMore(nonCapturingGroup(zeroOrMore(digit()).reluctant())),
+                RegExp.of().oneOrMore(anyOf(zeroOrMore(whitespace()), text("1"))),
+                RegExp.of().whitespace().occursAtLeast(2, nonCapturingGroup(zeroOrMore(group(anyOf("b", "1"))).reluctant())),
+                RegExp.of().occurs(2, group(optional("a"))).text("b"));
+        Random random = new Random(1);
+        for (RegExp regExp : Stream.concat(regExps.stream(), emptyIterations.stream()).toList()) {
+            CompiledRegExp compiled = regExp.compile(Backend.DFA);
+            Assertions.assertEquals(regExps.contains(regExp), compiled.engine() instanceof DfaEngine, regExp.toString());
+            int[] offsets = compiled.newOffsets();
+            for (int i = 0; i < 500; i++) {
+                String text = randomText(random, "abc 1\n\r", random.nextInt(10));
+                Matcher matcher = regExp.toMatcher(text);
+                Assertions.assertEquals(matcher.matches(), compiled.matches(text), regExp + " on " + text);
+                for (int from = 0; from <= text.length(); from++) {
+                    boolean found = matcher.find(from);
+                    Assertions.assertEquals(found, compiled.find(text, from, offsets), regExp + " on " + text + " from " + from);
+                    for (int group = 0; found && group <= matcher.groupCount(); group++) {
+                        Assertions.assertEquals(matcher.start(group), offsets[2 * group], regExp + " on " + text + " from " + from + " group " + group);
+                        Assertions.assertEquals(matcher.end(group), offsets[2 * group + 1], regExp + " on " + text + " from " + from + " group " + group);
+                    }
+                }
+            }
+        }
+        // the analyzer flags these nested quantifiers, so the default backend would pick the DFA
+        Assertions.assertEquals(2, emptyIterations.get(0).compile().find("1a\n").orElseThrow().end());
+    }
+
+    @Test
+    public void anyOfPrefixTest() {
+        Assertions.assertEquals("(foo(?:ba[rz]|qux))", anyOf("foobar", "foobaz", "fooqux").toString());
+        Assertions.assertEquals("(cat(?:egory)??)", anyOf("cat", "category").toString());
+        Assertions.assertEquals("(cat(?:egory)?)", anyOf("category", "cat").toString());
+        Assertions.assertEquals("(a[bc]?)", anyOf("ab", "ac", "a").toString());
+        Assertions.assertEquals("(a(?:b||c))", anyOf("ab", "a", "ac").toString());
+        Assertions.assertEquals("(\\.[*\\[])", anyOf(".*", ".[").toString());
+        Assertions.assertEquals("(abcd|ab|abc)", anyOf("abcd", "ab", "abc").toString()); // cannot be factored in this order
+
+        Matcher matcher = anyOf("cat", "category").toMatcher("category");
+        Assertions.assertTrue(matcher.find());
+        Assertions.assertEquals("cat", matcher.group());
+    }
+
+    @Test
+    public void anyOfPrefixIsSameAsAlternationTest() {
+        Random random = new Random(1);
+        for (int i = 0; i < 500; i++) {
+            String[] words = new String[2 + random.nextInt(5)];
+            for (int j = 0; j < words.length; j++) {
+                words[j] = randomText(random, "ab", 1 + random.nextInt(3));
+            }
+            RegExp regExp = RegExp.of().anyOf(words).optional("b").text("a");
+            Pattern alternation = Pattern.compile("(" + String.join("|", words) + ")b?a");
+            for (int j = 0; j < 20; j++) {
+                String text = randomText(random, "ab", random.nextInt(8));
+                Matcher expected = alternation.matcher(text);
+                Matcher actual = regExp.toMatcher(text);
+                while (expected.find()) {
+                    Assertions.assertTrue(actual.find(), regExp + " " + text);
+                    Assertions.assertEquals(expected.group(1), actual.group(1), regExp + " " + text);
+                    Assertions.assertEquals(expected.group(), actual.group(), regExp + " " + text);
+                }
+                Assertions.assertFalse(actual.find(), regExp + " " + text);
+            }
+        }
+    }
+
     @Test
     public void groupTest() {
         RegExp regExp = RegExp.of()
@@ -302,6 +599,640 @@ public class RegExpTest {
         Assertions.assertEquals(1, countMatches(regExp.toMatcher("#FFFFFF")));
     }
 
+    @Test
+    public void patternIsReusedTest() {
+        RegExp regExp = RegExp.of()
+                .text("foo");
+        Pattern pattern = regExp.toPattern();
+        Assertions.assertSame(pattern, regExp.toPattern());
+        Assertions.assertSame(pattern, regExp.toMatcher("foo").pattern());
+
+        regExp.digit();
+        Assertions.assertNotSame(pattern, regExp.toPattern());
+        Assertions.assertEquals("foo\\d", regExp.toPattern().pattern());
+    }
+
+    @Test
+    public void reusedMatcherTest() {
+        RegExp regExp = RegExp.of()
+                .group("g1", oneOrMore(digit()));
+        Matcher matcher = regExp.toReusedMatcher("abc123");
+        Assertions.assertTrue(matcher.find());
+        Assertions.assertEquals("123", matcher.group(regExp.indexOf("g1")));
+
+        Assertions.assertSame(matcher, regExp.toReusedMatcher("45"));
+        Assertions.assertTrue(matcher.matches());
+        Assertions.assertEquals("45", matcher.group(regExp.indexOf("g1")));
+
+        regExp.text("x");
+        Matcher matcher2 = regExp.toReusedMatcher("45x");
+        Assertions.assertNotSame(matcher, matcher2);
+        Assertions.assertTrue(matcher2.matches());
+    }
+
+    @Test
+    public void reusedMatcherOfEqualRegExpTest() {
+        RegExp ids = RegExp.of().oneOrMore(digit());
+        RegExp other = RegExp.of().oneOrMore(digit());
+        Assertions.assertSame(ids.compile(), other.compile());
+
+        Matcher matcher = ids.toReusedMatcher("order 42 and 43");
+        Assertions.assertTrue(matcher.find());
+        Assertions.assertEquals("42", matcher.group());
+        Assertions.assertTrue(other.toReusedMatcher("7").matches());
+        Assertions.assertTrue(matcher.find());
+        Assertions.assertEquals("43", matcher.group());
+    }
+
+    @Test
+    public void fragmentIsCopiedTest() {
+        RegExp fragment = RegExp.of()
+                .digit();
+        RegExp regExp = RegExp.of()
+                .group(fragment)
+                .oneOrMore(fragment);
+        fragment.word();
+        Assertions.assertEquals("\\d\\w", fragment.toString());
+        Assertions.assertEquals("(\\d)\\d+", regExp.toString());
+    }
+
+    @Test
+    public void deeplyNestedTest() {
+        RegExp regExp = RegExp.of().text("a");
+        for (int i = 0; i < 1000; i++) {
+            regExp = RegExp.of().group(regExp).text("b");
+        }
+        Assertions.assertEquals("(".repeat(1000) + "a" + ")b".repeat(1000), regExp.toString());
+    }
+
+    @Test
+    public void compileTest() {
+        RegExp regExp = RegExp.of()
+                .group("year", occurs(4, digit()))
+                .text("-")
+                .group(occurs(2, digit()))
+                .text("-")
+                .group("day", occurs(2, digit()));
+        CompiledRegExp compiled = regExp.compile();
+        Assertions.assertSame(compiled, regExp.compile());
+        Assertions.assertSame(compiled.pattern(), regExp.toPattern());
+        Assertions.assertEquals(2, compiled.slotCount());
+        Assertions.assertEquals(0, compiled.slotOf("year"));
+        Assertions.assertEquals(1, compiled.slotOf("day"));
+        Assertions.assertEquals("day", compiled.groupName(1));
+        Assertions.assertEquals(3, compiled.groupIndex(compiled.slotOf("day")));
+        Assertions.assertEquals(regExp.indexOf("day"), compiled.indexOf("day"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> compiled.slotOf("month"));
+
+        Matcher matcher = compiled.reusedMatcher("2023-03-17");
+        Assertions.assertTrue(matcher.matches());
+        Assertions.assertEquals("17", compiled.group(matcher, 1));
+
+        // find and matches have their own matcher, so they leave the reused one alone
+        Assertions.assertTrue(compiled.find("on 1999-12-31").isPresent());
+        Assertions.assertFalse(compiled.matches("1999-12"));
+        Assertions.assertEquals("2023-03-17", matcher.group());
+        Assertions.assertEquals("17", compiled.group(matcher, 1));
+
+        // changing the regexp does not affect the compiled one
+        regExp.text("T");
+        Assertions.assertNotSame(compiled, regExp.compile());
+        Assertions.assertTrue(compiled.matcher("2023-03-17").matches());
+    }
+
+    @Test
+    public void compiledIsThreadSafeTest() throws Exception {
+        CompiledRegExp compiled = RegExp.of()
+                .group("n", oneOrMore(digit()))
+                .compile();
+        int slot = compiled.slotOf("n");
+        List<Thread> threads = new ArrayList<>();
+        AtomicInteger failures = new AtomicInteger();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    Matcher matcher = compiled.reusedMatcher(Integer.toString(i));
+                    if (!matcher.matches() || !Integer.toString(i).equals(compiled.group(matcher, slot))) {
+                        failures.incrementAndGet();
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assertions.assertEquals(0, failures.get());
+    }
+
+    @Test
+    public void prefilterTest() {
+        Assertions.assertEquals("For sale: ", RegExp.of()
+                .text("For sale: ")
+                .anyOf("cat", "dog")
+                .text(" food")
+                .compile().prefilter().prefix());
+        Assertions.assertEquals("abc", RegExp.of() // "abcd+"
+                .group("g", text("ab"))
+                .oneOrMore("cd")
+                .compile().prefilter().prefix());
+        Assertions.assertEquals("] \"", RegExp.of()
+                .group("ip", oneOrMore(nonWhitespace()))
+                .text(" [")
+                .group("datetime", oneOrMore(oneOf(word().or().text(":/"))))
+                .text("] \"")
+                .compile().prefilter().required());
+        Assertions.assertNull(RegExp.of()
+                .optional("a")
+                .compile().prefilter().prefix());
+        Assertions.assertNull(RegExp.of()
+                .text("abc").optional("")
+                .compile().prefilter().required());
+    }
+
+    @Test
+    public void findTest() {
+        RegExp regExp = RegExp.of()
+                .text("id=")
+                .group("id", oneOrMore(digit()));
+        Assertions.assertEquals("42", regExp.find("x id= id=42 id=7").orElseThrow().group(regExp.indexOf("id")));
+        Assertions.assertEquals(6, regExp.find(new StringBuilder("x id= id=42 id=7")).orElseThrow().start());
+        Assertions.assertTrue(regExp.find("no match here").isEmpty());
+        Assertions.assertTrue(regExp.find(new StringBuilder("id= id=")).isEmpty());
+
+        RegExp required = RegExp.of()
+                .oneOrMore(digit())
+                .text("kg");
+        Assertions.assertEquals("12kg", required.find("weight 12kg").orElseThrow().group());
+        Assertions.assertTrue(required.find("weight 12 lbs").isEmpty());
+    }
+
+    @Test
+    public void findIsSameAsMatcherTest() {
+        RegExp regExp = RegExp.of()
+                .text("ab")
+                .optional("c")
+                .zeroOrMore(oneOf("abc"));
+        Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            String text = randomText(random, "abcx", random.nextInt(10));
+            Matcher matcher = regExp.toMatcher(text);
+            boolean found = matcher.find();
+            Optional<MatchResult> result = regExp.find(new StringBuilder(text));
+            Assertions.assertEquals(found, result.isPresent(), text);
+            if (found) {
+                Assertions.assertEquals(matcher.start(), result.get().start(), text);
+                Assertions.assertEquals(matcher.end(), result.get().end(), text);
+            }
+        }
+    }
+
+    @Test
+    public void literalEngineTest() {
+        RegExp regExp = RegExp.of()
+                .group("animal", anyOf("cat", "category", "dog"));
+        Assertions.assertTrue(regExp.compile().engine() instanceof LiteralEngine);
+        MatchResult matchResult = regExp.find("a category of dogs").orElseThrow();
+        Assertions.assertEquals("cat", matchResult.group(regExp.indexOf("animal")));
+        Assertions.assertEquals(2, matchResult.start());
+        Assertions.assertTrue(regExp.matches("dog"));
+        Assertions.assertFalse(regExp.matches("dogs"));
+        Assertions.assertEquals("category", regExp.match("category").orElseThrow().group(1));
+        Assertions.assertTrue(regExp.find("a bird").isEmpty());
+
+        Assertions.assertFalse(RegExp.of().text("a").oneOrMore("b").compile().engine() instanceof LiteralEngine);
+        Assertions.assertFalse(RegExp.of().anyOf("a", "").compile().engine() instanceof LiteralEngine);
+    }
+
+    @Test
+    public void literalEngineIsSameAsMatcherTest() {
+        RegExp regExp = RegExp.of().anyOf("b", "ab", "abc", "ca", "bcab", "c");
+        Assertions.assertTrue(regExp.compile().engine() instanceof LiteralEngine);
+        Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            String text = randomText(random, "abcx", random.nextInt(12));
+            Matcher matcher = regExp.toMatcher(text);
+            boolean found = matcher.find();
+            Optional<MatchResult> result = regExp.find(text);
+            Assertions.assertEquals(found, result.isPresent(), text);
+            if (found) {
+                Assertions.assertEquals(matcher.start(), result.get().start(), text);
+                Assertions.assertEquals(matcher.end(), result.get().end(), text);
+                Assertions.assertEquals(matcher.group(1), result.get().group(1), text);
+            }
+            Assertions.assertEquals(matcher.matches(), regExp.matches(text), text);
+        }
+    }
+
+    @Test
+    public void findAllReaderTest() {
+        RegExp regExp = RegExp.of()
+                .wordBoundary()
+                .group("key", oneOrMore(word()))
+                .text("=")
+                .group("value", zeroOrMore(digit()));
+        String text = "a=1 bb=22 x=, ccc=333 notakey dddd=4444 e=";
+        List<String> expected = new ArrayList<>();
+        Matcher matcher = regExp.toMatcher(text);
+        while (matcher.find()) {
+            expected.add(matcher.start() + ":" + matcher.group());
+        }
+
+        List<String> found = regExp.findAll(new StringReader(text))
+                .map(m -> m.start() + ":" + m.group())
+                .toList();
+        Assertions.assertEquals(expected, found);
+
+        // a tiny window that is fed one char at a time, so matches cross the window boundaries
+        for (int window = 2; window < 8; window++) {
+            StreamMatcher streamMatcher = new StreamMatcher(regExp.toPattern(), new OneCharReader(text), window, 64);
+            List<String> windowed = new ArrayList<>();
+            streamMatcher.forEachRemaining(m -> windowed.add(m.start() + ":" + m.group()));
+            Assertions.assertEquals(expected, windowed, "window " + window);
+        }
+    }
+
+    @Test
+    public void findAllWindowIsBoundedTest() {
+        String text = "x".repeat(10_000) + "abc" + "x".repeat(10_000);
+        StreamMatcher streamMatcher = new StreamMatcher(RegExp.of().text("abc").toPattern(), new StringReader(text), 16, 64);
+        Assertions.assertEquals(10_000, ((StreamMatchResult) streamMatcher.next()).startPosition());
+        Assertions.assertFalse(streamMatcher.hasNext());
+
+        StreamMatcher tooLong = new StreamMatcher(RegExp.of().text("a").oneOrMore("b").toPattern(), new StringReader("a" + "b".repeat(1000)), 16, 64);
+        Assertions.assertThrows(IllegalStateException.class, tooLong::hasNext);
+    }
+
+    @Test
+    public void findAllPathTest(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("log.txt");
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            sb.append("line ").append(i).append(" été 😀 user=u").append(i).append('\n');
+        }
+        Files.writeString(file, sb, StandardCharsets.UTF_8);
+        RegExp regExp = RegExp.of().text("user=").group("user", oneOrMore(word()));
+
+        try (Stream<MatchResult> matches = regExp.findAll(file, StandardCharsets.UTF_8)) {
+            List<MatchResult> list = matches.toList();
+            Assertions.assertEquals(1000, list.size());
+            Assertions.assertEquals("u999", list.get(999).group(1));
+            Assertions.assertEquals(sb.lastIndexOf("user="), list.get(999).start());
+        }
+        try (FileChannel channel = FileChannel.open(file)) {
+            Assertions.assertEquals(1000, regExp.findAll(channel, StandardCharsets.UTF_8).count());
+        }
+        // malformed bytes are replaced, like when reading the file
+        byte[] malformed = {'u', 's', 'e', 'r', '=', 'a', (byte) 0xFF, ' ', 'u', 's', 'e', 'r', '=', 'b'};
+        Assertions.assertEquals(List.of("user=a", "user=b"), regExp.findAll(Channels.newChannel(new ByteArrayInputStream(malformed)), StandardCharsets.UTF_8).map(MatchResult::group).toList());
+
+        // tiny regions, so multi-byte characters are split over two regions
+        try (Reader reader = new MappedFileReader(file, StandardCharsets.UTF_8, 7)) {
+            StringBuilder read = new StringBuilder();
+            char[] buffer = new char[1];
+            while (reader.read(buffer, 0, 1) > 0) {
+                read.append(buffer[0]);
+            }
+            Assertions.assertEquals(sb.toString(), read.toString());
+        }
+    }
+
+    @Test
+    public void byteBufferTest() {
+        RegExp regExp = RegExp.of()
+                .text("id=")
+                .group("id", oneOrMore(digit()));
+        Assertions.assertTrue(regExp.compile().isAsciiOnly());
+        byte[] bytes = "naïve café id=42 ok".getBytes(StandardCharsets.UTF_8);
+        int expectedStart = "naïve café ".getBytes(StandardCharsets.UTF_8).length;
+
+        for (ByteBuffer buffer : List.of(ByteBuffer.wrap(bytes), ByteBuffer.allocateDirect(bytes.length).put(bytes).flip())) {
+            MatchResult matchResult = regExp.find(buffer).orElseThrow();
+            Assertions.assertEquals(expectedStart, matchResult.start());
+            Assertions.assertEquals(expectedStart + 5, matchResult.end());
+            Assertions.assertEquals("42", matchResult.group(regExp.indexOf("id")));
+            Assertions.assertEquals(0, buffer.position());
+
+            Matcher matcher = regExp.toMatcher(buffer);
+            Assertions.assertTrue(matcher.find());
+            Assertions.assertEquals(expectedStart + 3, matcher.start(1));
+        }
+
+        ByteBuffer sliced = ByteBuffer.wrap(bytes);
+        sliced.position(expectedStart).limit(expectedStart + 5);
+        Assertions.assertTrue(regExp.matches(sliced));
+        Assertions.assertFalse(regExp.matches(ByteBuffer.wrap("id=4é".getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @Test
+    public void byteBufferNotAsciiOnlyTest() {
+        RegExp regExp = RegExp.of().text("id=").oneOrMore(nonWhitespace());
+        Assertions.assertFalse(regExp.compile().isAsciiOnly());
+        Assertions.assertThrows(IllegalStateException.class, () -> regExp.find(ByteBuffer.wrap(new byte[0])));
+        Assertions.assertFalse(RegExp.of().text("é").compile().isAsciiOnly());
+        Assertions.assertFalse(RegExp.of().notOneOf("abc").compile().isAsciiOnly());
+
+        // é is a letter, so there is no word boundary before "id", but on the bytes it would be a non-letter
+        RegExp boundary = RegExp.of().wordBoundary().text("id");
+        Assertions.assertFalse(boundary.compile().isAsciiOnly());
+        Assertions.assertTrue(boundary.find("éid").isEmpty());
+        Assertions.assertFalse(RegExp.of().nonWordBoundary().text("id").compile().isAsciiOnly());
+        // $ also matches before a final \u2028
+        RegExp end = RegExp.of().text("id").endOfLine();
+        Assertions.assertFalse(end.compile().isAsciiOnly());
+        Assertions.assertTrue(end.find("id\u2028").isPresent());
+        Assertions.assertTrue(RegExp.of().startOfLine().text("id").compile().isAsciiOnly());
+    }
+
+    @Test
+    public void groupExtractorTest() {
+        RegExp regExp = RegExp.of()
+                .group("ip", oneOrMore(nonWhitespace()))
+                .text(" [")
+                .group("offset", oneOf("+-").followedBy().occurs(4, digit()))
+                .text("] ")
+                .group("status", oneOrMore(digit()))
+                .whitespace()
+                .group("size", oneOrMore(digit()))
+                .optional(group(text(" extra")));
+        String logLine = "127.0.0.1 [-0800] 200 9876543210";
+
+        CompiledRegExp compiledRegExp = regExp.compile();
+        int[] offsets = compiledRegExp.newOffsets();
+        Assertions.assertTrue(compiledRegExp.matches(logLine, offsets));
+        int status = compiledRegExp.indexOf("status");
+        Assertions.assertEquals("200", logLine.substring(offsets[2 * status], offsets[2 * status + 1]));
+        Assertions.assertTrue(compiledRegExp.find(logLine, 1, offsets));
+        Assertions.assertEquals(1, offsets[0]);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> compiledRegExp.find(logLine, 0, new int[2]));
+
+        GroupExtractor extractor = regExp.toGroupExtractor();
+        Assertions.assertThrows(IllegalStateException.class, () -> extractor.view("ip"));
+        Assertions.assertTrue(extractor.matches(logLine));
+        CharSequence ip = extractor.view("ip");
+        Assertions.assertEquals("127.0.0.1", ip.toString());
+        Assertions.assertEquals('7', ip.charAt(2));
+        Assertions.assertEquals("0.0", ip.subSequence(4, 7).toString());
+        Assertions.assertEquals(-800, extractor.parseInt("offset"));
+        Assertions.assertEquals(200, extractor.parseInt("status"));
+        Assertions.assertEquals(9876543210L, extractor.parseLong("size"));
+        Assertions.assertThrows(NumberFormatException.class, () -> extractor.parseInt("size"));
+        Assertions.assertThrows(NumberFormatException.class, () -> extractor.parseInt("ip"));
+        Assertions.assertNull(extractor.view(5));
+        Assertions.assertEquals(-1, extractor.start(5));
+
+        // the view is reused for the next match
+        Assertions.assertTrue(extractor.find("at 10.0.0.1 [+0100] 404 0 extra"));
+        Assertions.assertSame(ip, extractor.view("ip"));
+        Assertions.assertEquals("10.0.0.1", ip.toString());
+        Assertions.assertEquals(100, extractor.parseInt("offset"));
+        Assertions.assertEquals(" extra", extractor.view(5).toString());
+        Assertions.assertFalse(extractor.matches("no match"));
+    }
+
+    enum HttpMethod {GET, POST}
+    record LogLine(String ip, HttpMethod method, int status, Long size) {}
+    record UnknownGroup(String ip, String user) {}
+
+    @Test
+    public void mapToTest() {
+        RegExp regExp = RegExp.of()
+                .group("ip", oneOrMore(nonWhitespace()))
+                .text(" ")
+                .group("method", oneOrMore(range("A", "Z")))
+                .text(" ")
+                .group("status", oneOrMore(digit()))
+                .text(" ")
+                .group("size", oneOrMore(oneOf("0123456789-")));
+        RecordMapper<LogLine> mapper = regExp.mapTo(LogLine.class);
+
+        Assertions.assertEquals(new LogLine("127.0.0.1", HttpMethod.GET, 200, 2048L), mapper.match("127.0.0.1 GET 200 2048").get());
+        Assertions.assertEquals(new LogLine("10.0.0.1", HttpMethod.POST, 404, 0L), mapper.find("at 10.0.0.1 POST 404 0").get());
+        Assertions.assertEquals(new LogLine("10.0.0.1", HttpMethod.POST, 404, 0L), mapper.map(regExp.find("at 10.0.0.1 POST 404 0").get()));
+        Assertions.assertTrue(mapper.match("no match").isEmpty());
+        Assertions.assertThrows(NumberFormatException.class, () -> mapper.match("127.0.0.1 GET 200 -"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> mapper.match("127.0.0.1 PUT 200 0"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> regExp.mapTo(UnknownGroup.class));
+    }
+
+    @Test
+    public void instrumentTest(@TempDir Path dir) throws IOException {
+        Assertions.assertTrue(RegExp.of().digit().metrics().isEmpty());
+
+        try (Recording recording = new Recording()) {
+            recording.enable("org.tbee.regexpbuilder.Compile");
+            recording.enable("org.tbee.regexpbuilder.Match").withThreshold(Duration.ZERO);
+            recording.start();
+
+            RegExp regExp = RegExp.of().text("user=").group("user", oneOrMore(word())).instrument("user");
+            Assertions.assertTrue(regExp.find("login user=tom").isPresent());
+            Assertions.assertFalse(regExp.matches("login user=tom"));
+            Assertions.assertEquals(1, regExp.filter(List.of("user=a", "nobody")).count());
+
+            RegExpMetrics metrics = regExp.metrics().get();
+            Assertions.assertEquals("user", metrics.ruleName());
+            Assertions.assertEquals(4, metrics.calls());
+            Assertions.assertEquals(2, metrics.hits());
+            Assertions.assertEquals(0.5, metrics.hitRatio());
+            Assertions.assertTrue(metrics.compileNanos() > 0);
+            Assertions.assertEquals(4, LongStream.of(metrics.latencyHistogram()).sum());
+            Assertions.assertTrue(metrics.latencyPercentileNanos(50) <= metrics.latencyPercentileNanos(100));
+            Assertions.assertNotSame(regExp.compile(), RegExp.of().text("user=").group("user", oneOrMore(word())).compile());
+
+            recording.stop();
+            Path file = dir.resolve("recording.jfr");
+            recording.dump(file);
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+            Assertions.assertEquals(1, events.stream().filter(event -> event.getEventType().getName().equals("org.tbee.regexpbuilder.Compile")).count());
+            List<RecordedEvent> matchEvents = events.stream().filter(event -> event.getEventType().getName().equals("org.tbee.regexpbuilder.Match")).toList();
+            Assertions.assertEquals(4, matchEvents.size());
+            Assertions.assertEquals("user", matchEvents.get(0).getString("ruleName"));
+        }
+    }
+
+    @Test
+    public void profileTest() {
+        RegExp regExp = RegExp.of()
+                .startOfLine()
+                .group("ip", oneOrMore(nonWhitespace()))
+                .text(" [")
+                .group("datetime", oneOrMore(group(oneOrMore(word()).optional(oneOf(":/")))))
+                .text("] ")
+                .group("method", anyOf("GET", "POST", "PUT"))
+                .text(" ")
+                .group("status", occurs(3, digit()))
+                .endOfLine();
+        List<String> samples = List.of(
+                "127.0.0.1 [21/Jul/2014:9:55:27] GET 200",
+                "10.0.0.1 [21/Jul/2014:9:55:27] PUT 404",
+                "10.0.0.1 [21/Jul/2014:9:55:27 -0800] POST 500",
+                "garbage");
+
+        Profile profile = regExp.profile(samples);
+        Assertions.assertEquals(4, profile.samples());
+        Assertions.assertEquals(samples.stream().filter(sample -> regExp.toMatcher(sample).find()).count(), profile.matched());
+        Assertions.assertEquals(0, profile.aborted());
+
+        Profile.Entry root = profile.entries().get(0);
+        Assertions.assertEquals("RegExp.of()", root.call());
+        Assertions.assertEquals(1.0, root.share());
+        Assertions.assertTrue(root.backtracks() > 0);
+        Profile.Entry datetime = profile.entries().stream().filter(entry -> entry.call().equals("group `datetime`")).findFirst().get();
+        Assertions.assertEquals(1, datetime.depth());
+        Assertions.assertTrue(datetime.share() > 0.5, profile.toString());
+        Assertions.assertEquals(datetime, profile.hotspot().get());
+        Assertions.assertTrue(profile.toString().contains("oneOrMore(nonWhitespace())"));
+        Assertions.assertTrue(profile.toString().contains("occurs(3, digit())"));
+
+        // an exponential expression is aborted
+        RegExp exponential = RegExp.of().startOfLine().oneOrMore(group(oneOrMore(text("a")))).text("b");
+        Assertions.assertEquals(1, exponential.profile(List.of("a".repeat(40))).aborted());
+    }
+
+    @Test
+    public void profileIsSameAsMatcherTest() {
+        List<RegExp> regExps = List.of(
+                RegExp.of().group("a", oneOrMore(word())).text("=").group(zeroOrMore(digit()).reluctant()).endOfLine(),
+                RegExp.of().wordBoundary().anyOf("cat", "category").nonWordBoundary(),
+                RegExp.of().atomicGroup(anyOf("ab", "a")).text("b"),
+                RegExp.of().group("x", oneOf("xy")).referToGroup("x"),
+                RegExp.of().oneOrMore(notOneOf("ab")).possessive().text("c"),
+                RegExp.of().occursBetween(2, 3, anyChar()).optional(range("0", "9")).endOfLine());
+        List<String> samples = List.of("", "a=12", "cat category", "abb", "xx yx", "ddc", "ab9\n", "é😀\r\n", "key=value");
+        for (RegExp regExp : regExps) {
+            for (String sample : samples) {
+                Assertions.assertEquals(regExp.toMatcher(sample).find() ? 1 : 0, regExp.profile(List.of(sample)).matched(), regExp + " on " + sample);
+            }
+        }
+    }
+
+    @Test
+    public void batchTest() {
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            texts.add(i % 3 == 0 ? "order " + i + " shipped" : "order " + i + " pending");
+        }
+        RegExp regExp = RegExp.of().text("order ").group("id", oneOrMore(digit())).text(" shipped");
+        List<String> expected = texts.stream().filter(text -> regExp.toMatcher(text).find()).toList();
+
+        Assertions.assertEquals(expected, regExp.filter(texts).toList());
+        Assertions.assertEquals(expected, regExp.filter(texts).parallel().toList());
+        Assertions.assertEquals(expected, regExp.filter(new LinkedList<>(texts)).parallel().toList());
+        Assertions.assertEquals(expected, regExp.filter(texts.iterator()).toList());
+        Assertions.assertEquals(expected, regExp.filter(texts.stream().parallel()).toList());
+
+        List<Optional<MatchResult>> matches = regExp.findInEach(texts).parallel().toList();
+        Assertions.assertEquals(texts.size(), matches.size());
+        Assertions.assertEquals("9999", matches.get(9999).get().group(1));
+        Assertions.assertTrue(matches.get(9998).isEmpty());
+        Assertions.assertEquals(expected.size(), regExp.findInEach(texts.iterator()).filter(Optional::isPresent).count());
+    }
+
+    @Test
+    public void testAndCountTest() {
+        RegExp regExp = RegExp.of().group("key", oneOrMore(word())).text("=").group("value", anyOf(oneOrMore(digit()), text("none")));
+        Assertions.assertTrue(regExp.test("a=1, b=none"));
+        Assertions.assertFalse(regExp.test("a=, b=-"));
+        Assertions.assertEquals(3, regExp.count("a=1, b=none, c=x, d=42"));
+        Assertions.assertEquals(0, regExp.count(""));
+        Assertions.assertEquals(List.of("a=1", "b=2"), Stream.of("a=1", "-", "b=2").filter(regExp.asPredicate()).toList());
+        Assertions.assertEquals("\\w+=(?:\\d+|none)", regExp.compile().captureFree().toString());
+
+        // empty matches are counted like Matcher.find() does
+        RegExp digits = RegExp.of().zeroOrMore(digit());
+        Assertions.assertEquals(digits.toMatcher("a12b3").results().count(), digits.count("a12b3"));
+        Assertions.assertEquals(1, digits.count(""));
+    }
+
+    @Test
+    public void captureFreeBackReferenceTest() {
+        RegExp regExp = RegExp.of().group("tag", oneOrMore(word())).text(":").group("quote", oneOf("'\"")).oneOrMore(word()).referToGroup("quote");
+        Assertions.assertEquals("\\w+:([\"'])\\w+\\1", regExp.compile().captureFree().toString());
+        Assertions.assertTrue(regExp.test("x:'abc'"));
+        Assertions.assertFalse(regExp.test("x:'abc\""));
+        Assertions.assertEquals(2, regExp.count("x:'a' y:\"b\" z:'c\""));
+
+        RegExp noGroups = RegExp.of().oneOrMore(digit());
+        Assertions.assertSame(noGroups.compile(), noGroups.compile().captureFree());
+    }
+
+    @Test
+    public void findAllParallelTest() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            sb.append("line ").append(i).append(i % 3 == 0 ? " user=u" + i : " anonymous").append('\n');
+        }
+        RegExp regExp = RegExp.of().text("user=").group("user", oneOrMore(word()));
+        List<String> expected = regExp.toMatcher(sb.toString()).results().map(MatchResult::group).toList();
+
+        List<MatchResult> ordered = regExp.findAllParallel(sb).toList();
+        Assertions.assertEquals(expected, ordered.stream().map(MatchResult::group).toList());
+        Assertions.assertEquals(sb.lastIndexOf("user="), ordered.get(ordered.size() - 1).start());
+
+        List<String> unordered = regExp.findAllParallel(sb, RegExp.of().text(";").or().lineFeed(), false).map(MatchResult::group).sorted().toList();
+        Assertions.assertEquals(expected.stream().sorted().toList(), unordered);
+
+        // only the groups are copied out of the builder, not the whole text, and they remain valid when it changes
+        Assertions.assertInstanceOf(StreamMatchResult.class, ordered.get(0));
+        sb.setLength(0);
+        Assertions.assertEquals("u0", ordered.get(0).group(1));
+        Assertions.assertEquals("user=u9999", ordered.get(ordered.size() - 1).group());
+    }
+
+    @Test
+    public void findAllParallelPathTest(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("log.txt");
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            sb.append("line ").append(i).append(" été user=u").append(i).append('\n');
+        }
+        Files.writeString(file, sb, StandardCharsets.UTF_8);
+        byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+        int lastStart = new String(bytes, StandardCharsets.ISO_8859_1).lastIndexOf("user=");
+
+        // ASCII only, matched on the bytes
+        List<MatchResult> matches = RegExp.of().text("user=").group("user", oneOrMore(word())).findAllParallel(file, RegExp.of().lineFeed(), true).toList();
+        Assertions.assertEquals(1000, matches.size());
+        Assertions.assertEquals("u999", matches.get(999).group(1));
+        Assertions.assertEquals(lastStart, ((StreamMatchResult) matches.get(999)).startPosition());
+
+        // decoded, with the positions converted back to bytes
+        matches = RegExp.of().text("été ").group("user", oneOrMore(anyChar())).findAllParallel(file, RegExp.of().lineFeed(), true).toList();
+        Assertions.assertEquals(1000, matches.size());
+        Assertions.assertEquals("user=u999", matches.get(999).group(1));
+        Assertions.assertEquals(lastStart, ((StreamMatchResult) matches.get(999)).startPosition(1));
+        Assertions.assertEquals(bytes.length - 1, ((StreamMatchResult) matches.get(999)).endPosition(1));
+        Assertions.assertEquals(lastStart - "été ".getBytes(StandardCharsets.UTF_8).length, ((StreamMatchResult) matches.get(999)).startPosition());
+    }
+
+    /**
+     * Returns at most one char per read.
+     */
+    private static class OneCharReader extends Reader {
+        private final StringReader reader;
+
+        OneCharReader(String text) {
+            reader = new StringReader(text);
+        }
+
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            return reader.read(cbuf, off, Math.min(len, 1));
+        }
+
+        public void close() {
+            reader.close();
+        }
+    }
+
+    private String randomText(Random random, String chars, int length) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            sb.append(chars.charAt(random.nextInt(chars.length())));
+        }
+        return sb.toString();
+    }
+
     private int countMatches(Matcher matcher) {
         int matches = 0;
         while (matcher.find()) {